@@ -0,0 +1,47 @@
+package com.github.cris16228.fresco.benchmarks;
+
+import com.github.cris16228.fresco.Base64Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Base64Benchmark {
+
+    @Param({"1024", "65536"})
+    public int byteCount;
+
+    @Param({"0", "2", "10"})
+    public int flags;
+
+    private byte[] bytes;
+    private String encoded;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[byteCount];
+        new Random(42).nextBytes(bytes);
+        encoded = Base64Utils.encodeToString(bytes, flags);
+    }
+
+    @Benchmark
+    public String encode() {
+        return Base64Utils.encodeToString(bytes, flags);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Base64Utils.decode(encoded, flags);
+    }
+}
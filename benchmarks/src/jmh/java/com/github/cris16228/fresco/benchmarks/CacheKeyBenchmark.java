@@ -0,0 +1,71 @@
+package com.github.cris16228.fresco.benchmarks;
+
+import com.github.cris16228.fresco.CacheKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key derivation runs on every bind, for the memory lookup and again for the disk lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheKeyBenchmark {
+
+    /**
+     * Stands in for {@code Bitmap.Config}, which only exists on Android.
+     */
+    enum Config {
+        ARGB_8888
+    }
+
+    private static final String URL = "https://images.example.com/photos/2024/06/17/IMG_20240617_184512.jpg?w=1080&format=webp";
+
+    @Param({"1024", "1048576"})
+    public int byteCount;
+
+    private String longUrl;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder(URL).append("&token=");
+        Random random = new Random(42);
+        while (builder.length() < 2048) {
+            builder.append(Integer.toHexString(random.nextInt()));
+        }
+        longUrl = builder.toString();
+        bytes = new byte[byteCount];
+        random.nextBytes(bytes);
+    }
+
+    @Benchmark
+    public String url() {
+        return CacheKey.of(URL);
+    }
+
+    @Benchmark
+    public String longUrl() {
+        return CacheKey.of(longUrl);
+    }
+
+    @Benchmark
+    public String sizedVariant() {
+        return CacheKey.sized(CacheKey.of(URL), 540, 540, Config.ARGB_8888, "centerCrop(540,540)");
+    }
+
+    @Benchmark
+    public String bytes() {
+        return CacheKey.of(bytes);
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.cris16228.fresco.benchmarks;
+
+import com.github.cris16228.fresco.FileCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index lookups and commits of the disk cache from several threads at once, the way the disk
+ * and network pools use it while a list scrolls. The cache is bounded below its working set so
+ * commits also drive eviction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileCacheBenchmark {
+
+    private static final int ENTRIES = 2000;
+    private static final int ENTRY_SIZE = 1024;
+
+    private File directory;
+    private FileCache fileCache;
+    private String[] urls;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("fresco-bench").toFile();
+        fileCache = new FileCache(directory, (long) ENTRIES * ENTRY_SIZE * 3 / 4, ENTRIES);
+        urls = new String[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            urls[i] = "https://images.example.com/photo/" + i + ".jpg";
+            commit(urls[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fileCache.clear();
+        directory.delete();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public File get() {
+        return fileCache.get(randomUrl());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean contains() {
+        return fileCache.contains(randomUrl());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public File mixedGet() {
+        return fileCache.get(randomUrl());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public File mixedPut() throws IOException {
+        return commit(randomUrl());
+    }
+
+    private String randomUrl() {
+        return urls[ThreadLocalRandom.current().nextInt(ENTRIES)];
+    }
+
+    private File commit(String url) throws IOException {
+        File temp = fileCache.newTempFile(url);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(new byte[ENTRY_SIZE]);
+        }
+        return fileCache.commit(url, temp);
+    }
+}
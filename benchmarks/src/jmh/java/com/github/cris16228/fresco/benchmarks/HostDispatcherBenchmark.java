@@ -0,0 +1,52 @@
+package com.github.cris16228.fresco.benchmarks;
+
+import com.github.cris16228.fresco.HostDispatcher;
+import com.github.cris16228.fresco.Priority;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission overhead added to every fetch. With one host the threads contend for two slots,
+ * so some calls park and are run inline when a slot frees up; with many hosts they mostly go
+ * straight through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HostDispatcherBenchmark {
+
+    private static final Runnable NOOP = () -> {
+    };
+
+    @Param({"1", "32"})
+    public int hostCount;
+
+    private final HostDispatcher dispatcher = new HostDispatcher(8, 2);
+    private String[] hosts;
+
+    @Setup
+    public void setUp() {
+        hosts = new String[hostCount];
+        for (int i = 0; i < hostCount; i++) {
+            hosts[i] = "cdn" + i + ".example.com";
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void limitAndRun() {
+        String host = hosts[ThreadLocalRandom.current().nextInt(hostCount)];
+        dispatcher.limit(host, Priority.VISIBLE, NOOP, Runnable::run).run();
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.cris16228.fresco.benchmarks;
+
+import com.github.cris16228.fresco.InFlightRequests;
+import com.github.cris16228.fresco.Priority;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deduplication bookkeeping. Loads are left running for a share of the keys, so some calls
+ * start a load and some join one that is already in flight; the joiners then cancel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InFlightRequestsBenchmark {
+
+    @Param({"16", "4096"})
+    public int keyCount;
+
+    private final InFlightRequests<Object> inFlightRequests = new InFlightRequests<>();
+    private final Object result = new Object();
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "key-" + i;
+            if ((i & 1) == 0) {
+                // Never completes: every later load of this key joins it.
+                inFlightRequests.load(keys[i], Priority.PREFETCH, request -> {
+                }, null);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void loadOrJoin(Blackhole blackhole) {
+        String key = keys[ThreadLocalRandom.current().nextInt(keyCount)];
+        InFlightRequests<Object>.Waiter waiter = inFlightRequests.load(key, Priority.VISIBLE,
+                request -> request.complete(result), blackhole::consume);
+        waiter.cancel();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean joinDownload() {
+        String url = keys[ThreadLocalRandom.current().nextInt(keyCount)];
+        boolean first = inFlightRequests.joinDownload(url, file -> {
+        });
+        if (first) {
+            inFlightRequests.completeDownload(url, null);
+        }
+        return first;
+    }
+}
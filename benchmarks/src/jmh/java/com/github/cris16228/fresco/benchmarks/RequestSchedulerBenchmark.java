@@ -0,0 +1,102 @@
+package com.github.cris16228.fresco.benchmarks;
+
+import com.github.cris16228.fresco.Priority;
+import com.github.cris16228.fresco.RequestScheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue operations of the priority/LIFO scheduler. The single worker is parked on a latch, so
+ * submitted tasks stay queued and each operation measures only the queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestSchedulerBenchmark {
+
+    private static final int BACKLOG = 500;
+    private static final int BATCH = 1000;
+    private static final Runnable NOOP = () -> {
+    };
+
+    private RequestScheduler blocked;
+    private RequestScheduler workers;
+    private CountDownLatch release;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        release = new CountDownLatch(1);
+        blocked = new RequestScheduler(1);
+        CountDownLatch started = new CountDownLatch(1);
+        blocked.submit(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+
+            }
+        }, Priority.VISIBLE);
+        started.await();
+        // A realistic backlog: a screenful of visible rows plus queued prefetches.
+        for (int i = 0; i < BACKLOG; i++) {
+            blocked.submit(NOOP, i % 5 == 0 ? Priority.VISIBLE : Priority.PREFETCH);
+        }
+        workers = new RequestScheduler(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        release.countDown();
+        blocked.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * A bind followed by the view being recycled before its load started.
+     */
+    @Benchmark
+    @Threads(4)
+    public boolean enqueueDequeue() {
+        Future<?> future = blocked.submit(NOOP, Priority.VISIBLE);
+        return blocked.dequeue(future);
+    }
+
+    /**
+     * A prefetch that an on-screen request then joins.
+     */
+    @Benchmark
+    @Threads(4)
+    public boolean enqueuePromoteDequeue() {
+        Future<?> future = blocked.submit(NOOP, Priority.PREFETCH);
+        blocked.promote(future, Priority.VISIBLE);
+        return blocked.dequeue(future);
+    }
+
+    /**
+     * Submission and execution of a batch of tiny tasks through the worker threads.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void drain() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH);
+        Runnable task = done::countDown;
+        for (int i = 0; i < BATCH; i++) {
+            workers.submit(task, (i & 1) == 0 ? Priority.VISIBLE : Priority.PREFETCH);
+        }
+        done.await();
+    }
+}
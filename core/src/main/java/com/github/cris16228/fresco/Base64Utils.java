@@ -0,0 +1,161 @@
+package com.github.cris16228.fresco;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Base64 on top of {@link java.util.Base64}. The {@code flag} arguments take the same values
+ * as {@code android.util.Base64}, so existing callers keep their output.
+ */
+public class Base64Utils {
+
+    public static final int DEFAULT = 0;
+    public static final int NO_PADDING = 1;
+    public static final int NO_WRAP = 2;
+    public static final int CRLF = 4;
+    public static final int URL_SAFE = 8;
+
+    static final String UNICODE_FORMAT = "UTF8";
+
+    private static final int LINE_LENGTH = 76;
+
+    protected static String getUnicodeFormat() {
+        return UNICODE_FORMAT;
+    }
+
+    protected static class Base64Encoder {
+
+        protected String encrypt(String unencryptedString, int flag, String unicode_format) {
+            String encryptedString = null;
+            try {
+                byte[] plainText;
+                if (StringUtils.isEmpty(unicode_format))
+                    plainText = unencryptedString.getBytes();
+                else
+                    plainText = unencryptedString.getBytes(unicode_format);
+                encryptedString = encodeToString(plainText, flag);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return encryptedString;
+        }
+
+        protected byte[] encryptV2(String unencryptedString, String unicode_format) {
+            byte[] encryptedString = null;
+            try {
+                byte[] plainText;
+                if (StringUtils.isEmpty(unicode_format))
+                    plainText = unencryptedString.getBytes();
+                else
+                    plainText = unencryptedString.getBytes(unicode_format);
+                encryptedString = Base64.getEncoder().encode(plainText);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return encryptedString;
+        }
+
+        protected byte[] encryptV2(String unencryptedString) {
+            return Base64.getEncoder().encode(unencryptedString.getBytes());
+        }
+
+        protected String encrypt(byte[] bytes, int flag) {
+            String encryptedString = null;
+            try {
+                encryptedString = encodeToString(bytes, flag);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return encryptedString;
+        }
+    }
+
+    protected static class Base64Decoder {
+
+        protected String decrypt(String encryptedString, int flag) {
+            String unencryptedString = null;
+            try {
+                unencryptedString = new String(decode(encryptedString, flag));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return unencryptedString;
+        }
+
+        protected byte[] decryptV2(String encryptedString, String unicode_format) {
+            byte[] unencryptedString = null;
+            try {
+                byte[] plainText;
+                if (StringUtils.isEmpty(unicode_format))
+                    plainText = encryptedString.getBytes();
+                else
+                    plainText = encryptedString.getBytes(unicode_format);
+                unencryptedString = Base64.getDecoder().decode(plainText);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return unencryptedString;
+        }
+
+        protected byte[] decryptV2(String encryptedString) {
+            return Base64.getDecoder().decode(encryptedString);
+        }
+    }
+
+    /**
+     * Same output as {@code android.util.Base64.encodeToString}: unless {@link #NO_WRAP} is set,
+     * lines are wrapped at 76 characters and the output ends with a line break.
+     */
+    public static String encodeToString(byte[] input, int flags) {
+        Base64.Encoder encoder;
+        boolean wrap = (flags & NO_WRAP) == 0;
+        if ((flags & URL_SAFE) != 0) {
+            encoder = Base64.getUrlEncoder();
+        } else if (wrap) {
+            encoder = Base64.getMimeEncoder(LINE_LENGTH, lineSeparator(flags));
+        } else {
+            encoder = Base64.getEncoder();
+        }
+        if ((flags & NO_PADDING) != 0) {
+            encoder = encoder.withoutPadding();
+        }
+        String encoded = encoder.encodeToString(input);
+        if (!wrap || encoded.isEmpty()) {
+            return encoded;
+        }
+        if ((flags & URL_SAFE) != 0) {
+            encoded = wrap(encoded, lineSeparator(flags));
+        }
+        return encoded + new String(lineSeparator(flags), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Decodes like {@code android.util.Base64.decode}: line breaks and other whitespace are
+     * skipped and padding is optional.
+     */
+    public static byte[] decode(String input, int flags) {
+        StringBuilder compact = new StringBuilder(input.length());
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                compact.append(c);
+            }
+        }
+        Base64.Decoder decoder = (flags & URL_SAFE) != 0 ? Base64.getUrlDecoder() : Base64.getDecoder();
+        return decoder.decode(compact.toString());
+    }
+
+    private static byte[] lineSeparator(int flags) {
+        return (flags & CRLF) != 0 ? new byte[]{'\r', '\n'} : new byte[]{'\n'};
+    }
+
+    private static String wrap(String encoded, byte[] separator) {
+        String lineBreak = new String(separator, StandardCharsets.US_ASCII);
+        StringBuilder builder = new StringBuilder(encoded.length() + encoded.length() / LINE_LENGTH * separator.length);
+        for (int i = 0; i < encoded.length(); i += LINE_LENGTH) {
+            if (i > 0) builder.append(lineBreak);
+            builder.append(encoded, i, Math.min(encoded.length(), i + LINE_LENGTH));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.cris16228.fresco;
+
+import com.github.cris16228.fresco.interfaces.Fetcher;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * HTTP freshness and revalidation rules for disk-cache entries. The values are kept in the
+ * entry metadata of {@link FileCache}; entries without a fetch time (local files, thumbnails)
+ * are never revalidated.
+ */
+public class CacheControl {
+
+    public static final String ETAG = "etag";
+    public static final String LAST_MODIFIED = "last-modified";
+    public static final String FETCHED = "fetched";
+    public static final String EXPIRES = "expires";
+
+    private static final String HTTP_DATE = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    public static boolean isFresh(Map<String, String> metadata, long now) {
+        if (!metadata.containsKey(FETCHED)) return true;
+        return parseLong(metadata.get(EXPIRES), 0) > now;
+    }
+
+    public static boolean canRevalidate(Map<String, String> metadata) {
+        return metadata.containsKey(ETAG) || metadata.containsKey(LAST_MODIFIED);
+    }
+
+    public static void addConditionalHeaders(Map<String, String> metadata, Map<String, String> headers) {
+        String etag = metadata.get(ETAG);
+        String lastModified = metadata.get(LAST_MODIFIED);
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+    }
+
+    /**
+     * Whether a partial body with these validators can be resumed: {@code If-Range} takes a
+     * strong ETag or a Last-Modified date.
+     */
+    public static boolean canResume(Map<String, String> metadata) {
+        return strongEtag(metadata) != null || metadata.containsKey(LAST_MODIFIED);
+    }
+
+    /**
+     * Asks for the body from {@code offset} on, provided it is still the version described by
+     * {@code metadata}; otherwise the server sends all of it with a 200.
+     */
+    public static void addRangeHeaders(Map<String, String> metadata, long offset, Map<String, String> headers) {
+        String etag = strongEtag(metadata);
+        headers.put("Range", "bytes=" + offset + "-");
+        headers.put("If-Range", etag != null ? etag : metadata.get(LAST_MODIFIED));
+    }
+
+    /**
+     * First byte of a 206 response, from its {@code Content-Range}, or -1 if it has none.
+     */
+    public static long rangeStart(Fetcher.Response response) {
+        String range = response.getHeader("Content-Range");
+        if (range == null || !range.startsWith("bytes ")) return -1;
+        int dash = range.indexOf('-');
+        return dash > 6 ? parseLong(range.substring(6, dash), -1) : -1;
+    }
+
+    private static String strongEtag(Map<String, String> metadata) {
+        String etag = metadata.get(ETAG);
+        return etag != null && !etag.startsWith("W/") ? etag : null;
+    }
+
+    /**
+     * Records the validators and freshness of a response received at {@code now}. On a 304 the
+     * stored validators are kept unless the server sent new ones.
+     */
+    public static void update(Map<String, String> metadata, Fetcher.Response response, long now, long defaultMaxAge) {
+        String etag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+        if (etag != null) {
+            metadata.put(ETAG, etag);
+        }
+        if (lastModified != null) {
+            metadata.put(LAST_MODIFIED, lastModified);
+        }
+        metadata.put(FETCHED, String.valueOf(now));
+        metadata.put(EXPIRES, String.valueOf(now + freshnessLifetime(response, now, defaultMaxAge)));
+    }
+
+    static long freshnessLifetime(Fetcher.Response response, long now, long defaultMaxAge) {
+        String cacheControl = response.getHeader("Cache-Control");
+        if (cacheControl != null) {
+            long maxAge = -1;
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-cache") || directive.equals("no-store")) {
+                    return 0;
+                }
+                if (directive.startsWith("max-age=")) {
+                    maxAge = parseLong(directive.substring("max-age=".length()), -1);
+                }
+            }
+            if (maxAge >= 0) {
+                return maxAge * 1000;
+            }
+        }
+        String expires = response.getHeader("Expires");
+        if (expires != null) {
+            long time = parseHttpDate(expires);
+            return time > 0 ? Math.max(0, time - now) : 0;
+        }
+        return defaultMaxAge;
+    }
+
+    static long parseHttpDate(String value) {
+        try {
+            SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            Date date = format.parse(value);
+            return date != null ? date.getTime() : 0;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null) return fallback;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
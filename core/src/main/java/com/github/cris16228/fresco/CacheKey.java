@@ -0,0 +1,165 @@
+package com.github.cris16228.fresco;
+
+/**
+ * Fixed-length cache keys: 32 hex characters of a 128-bit non-cryptographic hash. They are
+ * safe as file names whatever the source length, and cheap to derive, so a multi-megabyte
+ * byte array is hashed in place instead of being turned into a string first.
+ * <p>
+ * {@link Builder} folds request options into a key; {@link #sized(String, int, int, Enum)}
+ * derives the key of a decoded variant, which keeps the source key as a prefix.
+ */
+public final class CacheKey {
+
+    public static final int LENGTH = 32;
+
+    private static final long SEED_A = 0x9E3779B97F4A7C15L;
+    private static final long SEED_B = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_A = 0x87C37B91114253D5L;
+    private static final long PRIME_B = 0x4CF5AD432745937FL;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private CacheKey() {
+    }
+
+    public static String of(String source) {
+        if (source == null) return null;
+        return new Builder().put(source).build();
+    }
+
+    public static String of(byte[] bytes) {
+        if (bytes == null) return null;
+        return new Builder().put(bytes, 0, bytes.length).build();
+    }
+
+    /**
+     * Key of {@code key} decoded at {@code width} x {@code height} with {@code config}, the
+     * bitmap configuration. Returns {@code key} itself when no option is set.
+     */
+    public static String sized(String key, int width, int height, Enum<?> config) {
+        return sized(key, width, height, config, null);
+    }
+
+    /**
+     * Like {@link #sized(String, int, int, Enum)}, with the key of a transformation chain
+     * applied after decoding folded in.
+     */
+    public static String sized(String key, int width, int height, Enum<?> config, String transformation) {
+        if (width <= 0 && height <= 0 && config == null && transformation == null) return key;
+        return key + "#" + new Builder().put(width).put(height).put(config).put(transformation).build();
+    }
+
+    /**
+     * Key of the tile at {@code column}, {@code row} of {@code key} cut into {@code tileSize}
+     * squares after subsampling by {@code sampleSize}. Keeps {@code key} as a prefix, so
+     * dropping the variants of a source drops its tiles too.
+     */
+    public static String tile(String key, int tileSize, int sampleSize, int column, int row) {
+        return key + "#" + new Builder().put("tile").put(tileSize).put(sampleSize).put(column).put(row).build();
+    }
+
+    /**
+     * Whether {@code name} looks like a key produced by this class.
+     */
+    public static boolean isKey(String name) {
+        if (name == null || name.length() != LENGTH) return false;
+        for (int i = 0; i < LENGTH; i++) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Streaming hash over strings, bytes and numbers. Two independent 64-bit lanes are fed one
+     * 64-bit word at a time and mixed with the total length at the end.
+     */
+    public static final class Builder {
+
+        private long a = SEED_A;
+        private long b = SEED_B;
+        private long length;
+
+        public Builder put(String value) {
+            if (value == null) {
+                return put(-1);
+            }
+            int i = 0;
+            int count = value.length();
+            for (; i + 4 <= count; i += 4) {
+                mix((long) value.charAt(i)
+                        | (long) value.charAt(i + 1) << 16
+                        | (long) value.charAt(i + 2) << 32
+                        | (long) value.charAt(i + 3) << 48);
+            }
+            long tail = 0;
+            for (int shift = 0; i < count; i++, shift += 16) {
+                tail |= (long) value.charAt(i) << shift;
+            }
+            mix(tail ^ count);
+            return this;
+        }
+
+        public Builder put(byte[] bytes, int offset, int count) {
+            int end = offset + count;
+            int i = offset;
+            for (; i + 8 <= end; i += 8) {
+                mix((bytes[i] & 0xFFL)
+                        | (bytes[i + 1] & 0xFFL) << 8
+                        | (bytes[i + 2] & 0xFFL) << 16
+                        | (bytes[i + 3] & 0xFFL) << 24
+                        | (bytes[i + 4] & 0xFFL) << 32
+                        | (bytes[i + 5] & 0xFFL) << 40
+                        | (bytes[i + 6] & 0xFFL) << 48
+                        | (bytes[i + 7] & 0xFFL) << 56);
+            }
+            long tail = 0;
+            for (int shift = 0; i < end; i++, shift += 8) {
+                tail |= (bytes[i] & 0xFFL) << shift;
+            }
+            mix(tail ^ count);
+            return this;
+        }
+
+        public Builder put(long value) {
+            mix(value);
+            return this;
+        }
+
+        public Builder put(Enum<?> value) {
+            return put(value != null ? value.ordinal() : -1);
+        }
+
+        public String build() {
+            long h1 = fmix(a ^ length);
+            long h2 = fmix(b ^ length);
+            h1 += h2;
+            h2 += h1;
+            char[] out = new char[LENGTH];
+            writeHex(out, 0, h1);
+            writeHex(out, 16, h2);
+            return new String(out);
+        }
+
+        private void mix(long word) {
+            length++;
+            a = Long.rotateLeft((a ^ word) * PRIME_A, 31) * PRIME_B;
+            b = Long.rotateLeft((b + word) * PRIME_B, 27) * PRIME_A + a;
+        }
+
+        private static long fmix(long h) {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+            return h;
+        }
+
+        private static void writeHex(char[] out, int offset, long value) {
+            for (int i = 15; i >= 0; i--) {
+                out[offset + i] = HEX[(int) (value & 0xF)];
+                value >>>= 4;
+            }
+        }
+    }
+}
@@ -0,0 +1,628 @@
+package com.github.cris16228.fresco;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk cache bounded by total bytes and entry count. Entries are tracked in memory in access
+ * order and recorded in an append-only journal, so sizes are known without listing the
+ * directory. New entries are written to a temp file and only become visible on
+ * {@link #commit(String, File)}; eviction runs on a background thread.
+ * <p>
+ * Interrupted downloads can be set aside with {@link #keepPartial(String, File, Map)} and picked
+ * up again by {@link #resumeTempFile(String, Map)}. Partials are not entries: they are never
+ * returned by {@link #get(String)} and are dropped after {@link #PARTIAL_MAX_AGE}.
+ */
+public class FileCache {
+
+    public static final long DEFAULT_MAX_SIZE = 250L * 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRIES = 20000;
+    public static final long PARTIAL_MAX_AGE = 24L * 60 * 60 * 1000;
+
+    private static final String JOURNAL = ".journal";
+    private static final String JOURNAL_TMP = ".journal.tmp";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final String PARTIAL_METADATA_SUFFIX = ".partial.meta";
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+    static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    public final File cacheDir;
+    private final long maxSize;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(0, 0.75f, true);
+    private final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "FileCache-cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong tempCounter = new AtomicLong();
+    private final Runnable cleanup = this::trimToSize;
+    private Writer journalWriter;
+    private long totalSize;
+    private int redundantOpCount;
+    private boolean cleanupPending;
+    private boolean initialized;
+    private boolean closed;
+
+    public FileCache(File cacheDir) {
+        this(cacheDir, DEFAULT_MAX_SIZE, DEFAULT_MAX_ENTRIES);
+    }
+
+    public FileCache(File cacheDir, long maxSize, int maxEntries) {
+        if (maxSize <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("maxSize and maxEntries must be positive");
+        }
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+        this.maxEntries = maxEntries;
+        cleanupExecutor.execute(this::initialize);
+    }
+
+    public File getFile(String url) {
+        String file_name = getFileName(url);
+        if (file_name != null) {
+            return new File(cacheDir, file_name);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the committed file for {@code url} and marks it as recently used, or {@code null}
+     * when the cache holds no entry for it.
+     */
+    public synchronized File get(String url) {
+        initialize();
+        String name = getFileName(url);
+        if (name == null || entries.get(name) == null) {
+            return null;
+        }
+        File file = new File(cacheDir, name);
+        if (!file.exists()) {
+            removeEntry(name);
+            return null;
+        }
+        Entry entry = entries.get(name);
+        entry.lastAccess = System.currentTimeMillis();
+        journal(READ + ' ' + name + ' ' + entry.lastAccess);
+        redundantOpCount++;
+        scheduleCleanup();
+        return file;
+    }
+
+    public synchronized boolean contains(String url) {
+        initialize();
+        String name = getFileName(url);
+        return name != null && entries.containsKey(name);
+    }
+
+    /**
+     * Returns a fresh temp file to write an entry for {@code url} into. Concurrent writers each
+     * get their own file; publish it with {@link #commit(String, File)}.
+     */
+    public File newTempFile(String url) {
+        String name = getFileName(url);
+        if (name == null) return null;
+        // Startup deletes leftover temp files, so it must be over before this one is handed out.
+        initialize();
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
+        return new File(cacheDir, name + "." + tempCounter.incrementAndGet() + TMP_SUFFIX);
+    }
+
+    /**
+     * Returns a temp file for {@code url} that already holds the bytes kept by
+     * {@link #keepPartial(String, File, Map)}, and fills {@code metadata} with what was kept with
+     * them. The partial is taken over, so two writers never append to the same one. Without a
+     * partial this is {@link #newTempFile(String)} and {@code metadata} is left alone.
+     */
+    public synchronized File resumeTempFile(String url, Map<String, String> metadata) {
+        initialize();
+        File tempFile = newTempFile(url);
+        if (tempFile == null) return null;
+        String name = getFileName(url);
+        File partial = new File(cacheDir, name + PARTIAL_SUFFIX);
+        File partialMetadata = new File(cacheDir, name + PARTIAL_METADATA_SUFFIX);
+        if (!partial.exists()) {
+            partialMetadata.delete();
+            return tempFile;
+        }
+        Map<String, String> kept = readPartialMetadata(partialMetadata);
+        partialMetadata.delete();
+        if (kept == null || System.currentTimeMillis() - partial.lastModified() > PARTIAL_MAX_AGE || !partial.renameTo(tempFile)) {
+            partial.delete();
+            return tempFile;
+        }
+        metadata.putAll(kept);
+        return tempFile;
+    }
+
+    /**
+     * Sets aside the bytes an interrupted download of {@code url} wrote to {@code tempFile},
+     * with the {@code metadata} needed to resume it, replacing any earlier partial. The temp file
+     * is consumed either way. Returns {@code false} if nothing was kept.
+     */
+    public synchronized boolean keepPartial(String url, File tempFile, Map<String, String> metadata) {
+        initialize();
+        String name = getFileName(url);
+        if (name == null || tempFile == null || !tempFile.exists() || tempFile.length() <= 0
+                || metadata == null || metadata.isEmpty()) {
+            abort(tempFile);
+            return false;
+        }
+        File partial = new File(cacheDir, name + PARTIAL_SUFFIX);
+        File partialMetadata = new File(cacheDir, name + PARTIAL_METADATA_SUFFIX);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partialMetadata), StandardCharsets.UTF_8))) {
+            writer.write(encodeMetadata(metadata));
+        } catch (IOException e) {
+            e.printStackTrace();
+            partialMetadata.delete();
+            abort(tempFile);
+            return false;
+        }
+        partial.delete();
+        if (!tempFile.renameTo(partial)) {
+            partialMetadata.delete();
+            abort(tempFile);
+            return false;
+        }
+        return true;
+    }
+
+    private static Map<String, String> readPartialMetadata(File file) {
+        if (!file.exists()) return null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            return line != null ? decodeMetadata(line) : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public File commit(String url, File tempFile) {
+        return commit(url, tempFile, null);
+    }
+
+    /**
+     * Atomically moves {@code tempFile} into place as the entry for {@code url}, recording
+     * {@code metadata} with it. Returns the committed file, or {@code null} if the temp file was
+     * empty or could not be renamed, or the cache is closed.
+     */
+    public synchronized File commit(String url, File tempFile, Map<String, String> metadata) {
+        initialize();
+        String name = getFileName(url);
+        if (closed || name == null || tempFile == null || !tempFile.exists() || tempFile.length() <= 0) {
+            abort(tempFile);
+            return null;
+        }
+        File file = new File(cacheDir, name);
+        long size = tempFile.length();
+        if (!tempFile.renameTo(file)) {
+            abort(tempFile);
+            return null;
+        }
+        Entry entry = new Entry(size, System.currentTimeMillis());
+        if (metadata != null && !metadata.isEmpty()) {
+            entry.metadata = new HashMap<>(metadata);
+        }
+        Entry previous = entries.put(name, entry);
+        if (previous != null) {
+            totalSize -= previous.size;
+            redundantOpCount++;
+        }
+        totalSize += size;
+        journal(cleanLine(name, entry));
+        flushJournal();
+        scheduleCleanup();
+        return file;
+    }
+
+    /**
+     * Returns a copy of the metadata stored with the entry for {@code url}; empty when there is
+     * no entry or it carries none.
+     */
+    public synchronized Map<String, String> getMetadata(String url) {
+        initialize();
+        String name = getFileName(url);
+        Entry entry = name != null ? entries.get(name) : null;
+        if (entry == null || entry.metadata == null) {
+            return new HashMap<>();
+        }
+        return new HashMap<>(entry.metadata);
+    }
+
+    /**
+     * Merges {@code metadata} into the entry for {@code url} without touching its file. Returns
+     * {@code false} if there is no such entry or the cache is closed.
+     */
+    public synchronized boolean putMetadata(String url, Map<String, String> metadata) {
+        initialize();
+        String name = getFileName(url);
+        Entry entry = name != null ? entries.get(name) : null;
+        if (closed || entry == null) {
+            return false;
+        }
+        if (entry.metadata == null) {
+            entry.metadata = new HashMap<>();
+        }
+        entry.metadata.putAll(metadata);
+        journal(cleanLine(name, entry));
+        redundantOpCount++;
+        flushJournal();
+        scheduleCleanup();
+        return true;
+    }
+
+    public void abort(File tempFile) {
+        if (tempFile != null && tempFile.exists()) {
+            tempFile.delete();
+        }
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized long length() {
+        initialize();
+        return totalSize;
+    }
+
+    public synchronized int size() {
+        initialize();
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        initialize();
+        closeJournal();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        entries.clear();
+        totalSize = 0;
+        redundantOpCount = 0;
+        openJournal(false);
+    }
+
+    public synchronized boolean clear(String url) {
+        initialize();
+        String name = getFileName(url);
+        if (name == null) return false;
+        File file = new File(cacheDir, name);
+        boolean existed = file.exists();
+        removeEntry(name);
+        new File(cacheDir, name + PARTIAL_SUFFIX).delete();
+        new File(cacheDir, name + PARTIAL_METADATA_SUFFIX).delete();
+        flushJournal();
+        return existed && !file.exists();
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits in both budgets.
+     */
+    public synchronized void trimToSize() {
+        if (closed) return;
+        initialize();
+        cleanupPending = false;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((totalSize > maxSize || entries.size() > maxEntries) && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            totalSize -= eldest.getValue().size;
+            new File(cacheDir, eldest.getKey()).delete();
+            journal(REMOVE + ' ' + eldest.getKey());
+            redundantOpCount++;
+        }
+        if (journalRebuildRequired()) {
+            rebuildJournal();
+        } else {
+            flushJournal();
+        }
+    }
+
+    /**
+     * Stops the cleanup thread and closes the journal. The cache still serves what it holds,
+     * but no longer takes new entries; reopen the directory to write to it again.
+     */
+    public synchronized void close() {
+        if (closed) return;
+        initialize();
+        closed = true;
+        cleanupExecutor.shutdown();
+        flushJournal();
+        closeJournal();
+    }
+
+    private void scheduleCleanup() {
+        if (cleanupPending || closed) return;
+        if (totalSize > maxSize || entries.size() > maxEntries || journalRebuildRequired()) {
+            // Reads can come faster than the cleanup runs; one queued run covers them all.
+            cleanupPending = true;
+            cleanupExecutor.execute(cleanup);
+        }
+    }
+
+    private boolean journalRebuildRequired() {
+        return redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= entries.size();
+    }
+
+    private String getFileName(String url) {
+        return CacheKey.of(url);
+    }
+
+    private void removeEntry(String name) {
+        Entry entry = entries.remove(name);
+        new File(cacheDir, name).delete();
+        if (entry != null) {
+            totalSize -= entry.size;
+            journal(REMOVE + ' ' + name);
+            redundantOpCount++;
+        }
+    }
+
+    private synchronized void initialize() {
+        if (initialized) return;
+        initialized = true;
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
+        File journalFile = new File(cacheDir, JOURNAL);
+        if (journalFile.exists()) {
+            try {
+                readJournal(journalFile);
+            } catch (IOException e) {
+                // Corrupt journal: rebuild the index from the directory.
+                entries.clear();
+                indexDirectory();
+            }
+        } else {
+            indexDirectory();
+        }
+        dropLegacyEntries();
+        deleteOrphans();
+        rebuildJournal();
+        scheduleCleanup();
+    }
+
+    private void readJournal(File journalFile) throws IOException {
+        int lineCount = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                String[] parts = line.split(" ");
+                if (parts.length < 2) continue;
+                String name = parts[1];
+                if (CLEAN.equals(parts[0]) && parts.length >= 3) {
+                    Entry entry = new Entry(Long.parseLong(parts[2]), parts.length >= 4 ? Long.parseLong(parts[3]) : 0);
+                    if (parts.length >= 5) {
+                        entry.metadata = decodeMetadata(parts[4]);
+                    }
+                    entries.put(name, entry);
+                } else if (READ.equals(parts[0])) {
+                    Entry entry = entries.get(name);
+                    if (entry != null && parts.length >= 3) {
+                        entry.lastAccess = Long.parseLong(parts[2]);
+                    }
+                } else if (REMOVE.equals(parts[0])) {
+                    entries.remove(name);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed journal line", e);
+        }
+        redundantOpCount = lineCount - entries.size();
+        totalSize = 0;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (!new File(cacheDir, entry.getKey()).exists()) {
+                iterator.remove();
+            } else {
+                totalSize += entry.getValue().size;
+            }
+        }
+    }
+
+    /**
+     * One-off listing used when there is no journal yet, e.g. the first start after upgrading
+     * from the unbounded cache. Oldest files are treated as least recently used.
+     */
+    private void indexDirectory() {
+        File[] files = cacheDir.listFiles();
+        totalSize = 0;
+        if (files == null) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            String name = file.getName();
+            if (!file.isFile() || name.startsWith(JOURNAL) || name.endsWith(TMP_SUFFIX)
+                    || name.endsWith(PARTIAL_SUFFIX) || name.endsWith(PARTIAL_METADATA_SUFFIX)) continue;
+            entries.put(name, new Entry(file.length(), file.lastModified()));
+            totalSize += file.length();
+        }
+    }
+
+    /**
+     * Entries written before names became {@link CacheKey hashed keys} can no longer be looked
+     * up, so they only take space until evicted.
+     */
+    private void dropLegacyEntries() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (!CacheKey.isKey(entry.getKey())) {
+                iterator.remove();
+                new File(cacheDir, entry.getKey()).delete();
+                totalSize -= entry.getValue().size;
+            }
+        }
+    }
+
+    /**
+     * Deletes temp files left by writers that did not finish, and partials that are too old to
+     * be worth resuming or lost their metadata.
+     */
+    private void deleteOrphans() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) return;
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TMP_SUFFIX) && !name.startsWith(JOURNAL)) {
+                file.delete();
+            } else if (name.endsWith(PARTIAL_SUFFIX)) {
+                String entry = name.substring(0, name.length() - PARTIAL_SUFFIX.length());
+                File partialMetadata = new File(cacheDir, entry + PARTIAL_METADATA_SUFFIX);
+                if (now - file.lastModified() > PARTIAL_MAX_AGE || !partialMetadata.exists()) {
+                    file.delete();
+                    partialMetadata.delete();
+                }
+            } else if (name.endsWith(PARTIAL_METADATA_SUFFIX)) {
+                String entry = name.substring(0, name.length() - PARTIAL_METADATA_SUFFIX.length());
+                if (!new File(cacheDir, entry + PARTIAL_SUFFIX).exists()) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private void rebuildJournal() {
+        closeJournal();
+        File tmp = new File(cacheDir, JOURNAL_TMP);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writer.write(cleanLine(entry.getKey(), entry.getValue()));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (!tmp.renameTo(new File(cacheDir, JOURNAL))) {
+            tmp.delete();
+        }
+        redundantOpCount = 0;
+        openJournal(true);
+    }
+
+    private static String cleanLine(String name, Entry entry) {
+        String line = CLEAN + ' ' + name + ' ' + entry.size + ' ' + entry.lastAccess;
+        if (entry.metadata != null && !entry.metadata.isEmpty()) {
+            line += ' ' + encodeMetadata(entry.metadata);
+        }
+        return line;
+    }
+
+    private static String encodeMetadata(Map<String, String> metadata) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                if (entry.getValue() == null) continue;
+                if (builder.length() > 0) builder.append('&');
+                builder.append(URLEncoder.encode(entry.getKey(), "UTF-8"))
+                        .append('=')
+                        .append(URLEncoder.encode(entry.getValue(), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+        return builder.toString();
+    }
+
+    private static Map<String, String> decodeMetadata(String encoded) {
+        Map<String, String> metadata = new HashMap<>();
+        try {
+            for (String pair : encoded.split("&")) {
+                int separator = pair.indexOf('=');
+                if (separator <= 0) continue;
+                metadata.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        return metadata;
+    }
+
+    private void openJournal(boolean append) {
+        try {
+            journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(cacheDir, JOURNAL), append), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+            journalWriter = null;
+        }
+    }
+
+    private void closeJournal() {
+        if (journalWriter == null) return;
+        try {
+            journalWriter.close();
+        } catch (IOException ignored) {
+
+        }
+        journalWriter = null;
+    }
+
+    private void journal(String line) {
+        if (journalWriter == null) return;
+        try {
+            journalWriter.write(line);
+            journalWriter.write('\n');
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void flushJournal() {
+        if (journalWriter == null) return;
+        try {
+            journalWriter.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Entry {
+
+        final long size;
+        long lastAccess;
+        Map<String, String> metadata;
+
+        Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
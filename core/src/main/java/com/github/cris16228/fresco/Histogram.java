@@ -0,0 +1,77 @@
+package com.github.cris16228.fresco;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Durations bucketed by powers of two of microseconds, from under a microsecond to over an hour.
+ * Percentiles are reported as the upper bound of their bucket, so they are accurate to a
+ * factor of two, which is enough to tell a cache hit from a network round trip.
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 33;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long previous = max.get();
+        while (micros > previous && !max.compareAndSet(previous, micros)) {
+            previous = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMeanMicros() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+
+    /**
+     * Upper bound, in microseconds, of the bucket holding the {@code percentile}th value.
+     */
+    public long getPercentileMicros(double percentile) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d mean=%dus p50=%dus p90=%dus p99=%dus max=%dus", getCount(), getMeanMicros(),
+                getPercentileMicros(50), getPercentileMicros(90), getPercentileMicros(99), getMaxMicros());
+    }
+}
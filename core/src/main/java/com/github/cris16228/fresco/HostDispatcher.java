@@ -0,0 +1,152 @@
+package com.github.cris16228.fresco;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Connection limits for network work: at most {@code maxRequests} fetches at once, and at most
+ * {@code maxRequestsPerHost} against any one host. Work that starts while a limit is reached
+ * does not hold its worker thread: it is parked and submitted again once a slot frees up, so a
+ * burst against one host never stalls the other hosts behind it.
+ * <p>
+ * Parked work is handed back in the order of {@link RequestScheduler}: by {@link Priority},
+ * then newest first.
+ */
+public class HostDispatcher {
+
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final Map<String, Integer> running = new HashMap<>();
+    private final List<Call> parked = new ArrayList<>();
+    private int runningCount;
+    private long sequence;
+
+    public HostDispatcher() {
+        this(DEFAULT_MAX_REQUESTS, DEFAULT_MAX_REQUESTS_PER_HOST);
+    }
+
+    public HostDispatcher(int maxRequests, int maxRequestsPerHost) {
+        if (maxRequests <= 0 || maxRequestsPerHost <= 0) {
+            throw new IllegalArgumentException("maxRequests and maxRequestsPerHost must be positive");
+        }
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * Wraps {@code work} against {@code host} so it only runs within the limits. Queue the result
+     * on a worker pool; if it starts while a limit is reached it parks, and is passed to
+     * {@code submit} once a slot frees up. {@code submit} must not drop it, or the calls parked
+     * behind it wait for the next slot to free up.
+     */
+    public Runnable limit(String host, Priority priority, Runnable work, Consumer<Runnable> submit) {
+        synchronized (this) {
+            return new Call(host != null ? host : "", priority, sequence++, work, submit);
+        }
+    }
+
+    public synchronized int runningCount() {
+        return runningCount;
+    }
+
+    public synchronized int runningCount(String host) {
+        Integer count = running.get(host != null ? host : "");
+        return count != null ? count : 0;
+    }
+
+    public synchronized int parkedCount() {
+        return parked.size();
+    }
+
+    private synchronized boolean acquire(Call call) {
+        if (!fits(call.host)) {
+            parked.add(call);
+            return false;
+        }
+        runningCount++;
+        running.put(call.host, runningCount(call.host) + 1);
+        return true;
+    }
+
+    private void release(String host) {
+        Call next;
+        synchronized (this) {
+            runningCount--;
+            int count = runningCount(host) - 1;
+            if (count > 0) {
+                running.put(host, count);
+            } else {
+                running.remove(host);
+            }
+            next = nextParked();
+        }
+        // The slot is not reserved: the call claims it again when its worker picks it up.
+        if (next != null) {
+            next.submit.accept(next);
+        }
+    }
+
+    private boolean fits(String host) {
+        return runningCount < maxRequests && runningCount(host) < maxRequestsPerHost;
+    }
+
+    private Call nextParked() {
+        Call best = null;
+        for (Call call : parked) {
+            if (fits(call.host) && (best == null || call.compareTo(best) < 0)) {
+                best = call;
+            }
+        }
+        if (best != null) {
+            parked.remove(best);
+        }
+        return best;
+    }
+
+    private class Call implements Runnable, Comparable<Call> {
+
+        final String host;
+        final Priority priority;
+        final long sequence;
+        final Runnable work;
+        final Consumer<Runnable> submit;
+
+        Call(String host, Priority priority, long sequence, Runnable work, Consumer<Runnable> submit) {
+            this.host = host;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.work = work;
+            this.submit = submit;
+        }
+
+        @Override
+        public void run() {
+            if (!acquire(this)) return;
+            try {
+                work.run();
+            } finally {
+                release(host);
+            }
+        }
+
+        @Override
+        public int compareTo(Call other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(other.sequence, sequence);
+        }
+    }
+}
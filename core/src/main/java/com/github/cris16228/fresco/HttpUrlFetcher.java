@@ -0,0 +1,98 @@
+package com.github.cris16228.fresco;
+
+import com.github.cris16228.fresco.interfaces.Fetcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * The default {@link Fetcher}, on {@link HttpURLConnection}. Connections are pooled by the
+ * platform's keep-alive.
+ */
+public class HttpUrlFetcher implements Fetcher {
+
+    public static final int DEFAULT_TIMEOUT = 10000;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    public HttpUrlFetcher() {
+        this(DEFAULT_TIMEOUT, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param connectTimeout milliseconds to wait for the connection, 0 for no limit
+     * @param readTimeout    milliseconds to wait for each read of the body, 0 for no limit
+     */
+    public HttpUrlFetcher(int connectTimeout, int readTimeout) {
+        if (connectTimeout < 0 || readTimeout < 0) {
+            throw new IllegalArgumentException("Timeouts must not be negative");
+        }
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public Response fetch(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (headers != null && !headers.isEmpty()) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                connection.setRequestProperty(entry.getKey(), entry.getValue());
+            }
+        }
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setInstanceFollowRedirects(true);
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        return new HttpResponse(connection);
+    }
+
+    static class HttpResponse implements Response {
+
+        private final HttpURLConnection connection;
+        private InputStream body;
+
+        HttpResponse(HttpURLConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public int getCode() throws IOException {
+            return connection.getResponseCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = connection.getInputStream();
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (body != null) {
+                    body.close();
+                }
+            } catch (IOException ignored) {
+
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+}
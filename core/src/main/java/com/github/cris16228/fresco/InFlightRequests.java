@@ -0,0 +1,240 @@
+package com.github.cris16228.fresco;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Loads that are currently running, keyed by cache key. A request for a key that is already
+ * loading is attached to the running load instead of starting another fetch and decode.
+ * Downloads are tracked separately by URL so loads of the same source at different sizes still
+ * share one network fetch.
+ *
+ * @param <T> result of a load; {@code null} means it failed
+ */
+public class InFlightRequests<T> {
+
+    private final Map<String, Request> requests = new HashMap<>();
+    private final Map<String, List<Consumer<File>>> downloads = new HashMap<>();
+    private volatile Consumer<String> cancellationListener;
+
+    /**
+     * Moves a load through the pipeline stages. Each stage is handed to
+     * {@link Request#stage(RequestScheduler, Runnable)} and the last one calls
+     * {@link Request#complete(Object)}.
+     */
+    public interface Loader<T> {
+        void load(InFlightRequests<T>.Request request);
+    }
+
+    /**
+     * Called with the key of every load dropped because nobody waits for it any more.
+     */
+    public void setCancellationListener(Consumer<String> cancellationListener) {
+        this.cancellationListener = cancellationListener;
+    }
+
+    /**
+     * Waits for the load of {@code key}, starting it with {@code loader} if none is running.
+     * {@code callback} may be {@code null} for loads that only warm the caches.
+     */
+    public synchronized Waiter load(String key, Priority priority, Loader<T> loader, Consumer<T> callback) {
+        Request request = requests.get(key);
+        boolean created = request == null;
+        if (created) {
+            request = new Request(key, priority);
+            requests.put(key, request);
+        } else {
+            request.cancelled = false;
+            request.promote(priority);
+        }
+        Waiter waiter = new Waiter(request, callback);
+        request.waiters.add(waiter);
+        if (created) {
+            loader.load(request);
+        }
+        return waiter;
+    }
+
+    public synchronized boolean isLoading(String key) {
+        return requests.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return requests.size();
+    }
+
+    /**
+     * Registers {@code callback} for the download of {@code url}. Returns {@code true} if the
+     * caller is the first and must perform the download and then call
+     * {@link #completeDownload(String, File)}, from a {@code finally} block so a failed download
+     * does not leave the others waiting.
+     */
+    public synchronized boolean joinDownload(String url, Consumer<File> callback) {
+        List<Consumer<File>> callbacks = downloads.get(url);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return false;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        downloads.put(url, callbacks);
+        return true;
+    }
+
+    public void completeDownload(String url, File file) {
+        List<Consumer<File>> callbacks;
+        synchronized (this) {
+            callbacks = downloads.remove(url);
+        }
+        if (callbacks == null) return;
+        for (Consumer<File> callback : callbacks) {
+            try {
+                callback.accept(file);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized List<Waiter> finish(Request request) {
+        if (request.completed) {
+            return new ArrayList<>();
+        }
+        request.completed = true;
+        if (requests.get(request.key) == request) {
+            requests.remove(request.key);
+        }
+        List<Waiter> waiters = new ArrayList<>(request.waiters);
+        request.waiters.clear();
+        return waiters;
+    }
+
+    private synchronized void detach(Waiter waiter) {
+        Request request = waiter.request;
+        if (!request.waiters.remove(waiter) || !request.waiters.isEmpty()) {
+            return;
+        }
+        // Nobody is waiting any more: drop the load if its current stage is still queued,
+        // otherwise let that stage finish so its work still lands in the caches.
+        request.cancelled = true;
+        if (request.future != null && request.scheduler.dequeue(request.future)) {
+            finish(request);
+            cancelled(request);
+        }
+    }
+
+    private void cancelled(Request request) {
+        Consumer<String> listener = cancellationListener;
+        if (listener != null) {
+            listener.accept(request.key);
+        }
+    }
+
+    public class Waiter {
+
+        private final Request request;
+        private final Consumer<T> callback;
+
+        Waiter(Request request, Consumer<T> callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+
+        public String getKey() {
+            return request.key;
+        }
+
+        public void cancel() {
+            detach(this);
+        }
+    }
+
+    public class Request {
+
+        private final String key;
+        private final List<Waiter> waiters = new ArrayList<>();
+        private Priority priority;
+        private RequestScheduler scheduler;
+        private Future<?> future;
+        private boolean cancelled;
+        private boolean completed;
+
+        Request(String key, Priority priority) {
+            this.key = key;
+            this.priority = priority;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Priority getPriority() {
+            synchronized (InFlightRequests.this) {
+                return priority;
+            }
+        }
+
+        /**
+         * Queues the next step of this load on {@code scheduler}. A step that throws, even an
+         * {@link Error}, completes the load without a result. If every waiter has gone, the load
+         * stops here.
+         */
+        public void stage(RequestScheduler scheduler, Runnable step) {
+            synchronized (InFlightRequests.this) {
+                if (completed) return;
+                if (cancelled) {
+                    finish(this);
+                    cancelled(this);
+                    return;
+                }
+                this.scheduler = scheduler;
+                this.future = scheduler.submit(() -> {
+                    try {
+                        step.run();
+                    } catch (Throwable e) {
+                        // The task's future is never read, so anything not caught here is lost
+                        // and the key would stay in flight for good.
+                        e.printStackTrace();
+                        complete(null);
+                    }
+                }, priority);
+            }
+        }
+
+        /**
+         * Ends the load here if every waiter has gone, as {@link #stage(RequestScheduler, Runnable)}
+         * would. For steps that are run other than through a stage. Returns {@code true} if the
+         * load is over.
+         */
+        public boolean stopIfCancelled() {
+            synchronized (InFlightRequests.this) {
+                if (completed) return true;
+                if (!cancelled) return false;
+                finish(this);
+                cancelled(this);
+                return true;
+            }
+        }
+
+        public void complete(T result) {
+            for (Waiter waiter : finish(this)) {
+                if (waiter.callback != null) {
+                    waiter.callback.accept(result);
+                }
+            }
+        }
+
+        private void promote(Priority priority) {
+            if (priority.ordinal() >= this.priority.ordinal()) return;
+            this.priority = priority;
+            if (future != null) {
+                scheduler.promote(future, priority);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.cris16228.fresco;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recent failures, so a broken image is not fetched again on every bind. Each failed URL is
+ * remembered for the TTL of its {@link Failure} class, in a bounded LRU. Transient failures
+ * also back the whole host off, exponentially from {@code baseBackoff} up to
+ * {@code maxBackoff}, until a fetch from it succeeds.
+ * <p>
+ * Times are passed in, in milliseconds, so callers use one clock for a whole request.
+ */
+public class NegativeCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+    public static final long DEFAULT_BASE_BACKOFF = 1000;
+    public static final long DEFAULT_MAX_BACKOFF = 5 * 60 * 1000;
+
+    public enum Failure {
+        /**
+         * The server said the image is not there (404, 410 and other client errors).
+         */
+        NOT_FOUND(10 * 60 * 1000),
+        /**
+         * Timeouts, dropped connections, 5xx and 429. Likely to pass, so remembered briefly.
+         */
+        TRANSIENT(10 * 1000),
+        /**
+         * The body was downloaded but is not an image the platform can decode.
+         */
+        DECODE(30 * 60 * 1000);
+
+        final long defaultTtl;
+
+        Failure(long defaultTtl) {
+            this.defaultTtl = defaultTtl;
+        }
+    }
+
+    private final int maxEntries;
+    private final long baseBackoff;
+    private final long maxBackoff;
+    private final long[] ttls = new long[Failure.values().length];
+    private final LinkedHashMap<String, Entry> failures = new LinkedHashMap<>(0, 0.75f, true);
+    private final Map<String, Backoff> hosts = new HashMap<>();
+
+    public NegativeCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_BASE_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    public NegativeCache(int maxEntries, long baseBackoff, long maxBackoff) {
+        if (maxEntries <= 0 || baseBackoff < 0 || maxBackoff < baseBackoff) {
+            throw new IllegalArgumentException("maxEntries must be positive and 0 <= baseBackoff <= maxBackoff");
+        }
+        this.maxEntries = maxEntries;
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+        for (Failure failure : Failure.values()) {
+            ttls[failure.ordinal()] = failure.defaultTtl;
+        }
+    }
+
+    /**
+     * How long URLs that failed with {@code failure} are skipped; 0 turns that class off.
+     */
+    public synchronized NegativeCache setTtl(Failure failure, long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("TTL must not be negative");
+        }
+        ttls[failure.ordinal()] = millis;
+        return this;
+    }
+
+    public synchronized long getTtl(Failure failure) {
+        return ttls[failure.ordinal()];
+    }
+
+    /**
+     * Returns why {@code url} should not be fetched at {@code now}: its own recent failure, or
+     * {@link Failure#TRANSIENT} while {@code host} is backing off. {@code null} means go ahead.
+     */
+    public synchronized Failure check(String url, String host, long now) {
+        Entry entry = failures.get(url);
+        if (entry != null) {
+            if (entry.expires > now) return entry.failure;
+            failures.remove(url);
+        }
+        Backoff backoff = host != null ? hosts.get(host) : null;
+        if (backoff != null && backoff.until > now) {
+            return Failure.TRANSIENT;
+        }
+        return null;
+    }
+
+    /**
+     * Remembers that fetching {@code url} failed at {@code now}. A transient failure also
+     * backs {@code host} off, for twice as long as the previous time.
+     */
+    public synchronized void recordFailure(String url, String host, Failure failure, long now) {
+        long ttl = ttls[failure.ordinal()];
+        if (ttl > 0) {
+            failures.put(url, new Entry(failure, now + ttl));
+            Iterator<Entry> iterator = failures.values().iterator();
+            while (failures.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        if (failure == Failure.TRANSIENT && host != null && baseBackoff > 0) {
+            if (hosts.size() >= maxEntries) {
+                hosts.values().removeIf(expired -> expired.until <= now);
+            }
+            Backoff backoff = hosts.get(host);
+            if (backoff == null) {
+                backoff = new Backoff();
+                hosts.put(host, backoff);
+            }
+            // Fetches that were already running when the backoff began do not extend it.
+            if (backoff.until <= now) {
+                backoff.delay = backoff.delay == 0 ? baseBackoff : Math.min(maxBackoff, backoff.delay * 2);
+                backoff.until = now + backoff.delay;
+            }
+        }
+    }
+
+    /**
+     * Forgets the failure of {@code url} and ends the backoff of {@code host}.
+     */
+    public synchronized void recordSuccess(String url, String host) {
+        failures.remove(url);
+        if (host != null) {
+            hosts.remove(host);
+        }
+    }
+
+    public synchronized void remove(String url) {
+        failures.remove(url);
+    }
+
+    public synchronized void clear() {
+        failures.clear();
+        hosts.clear();
+    }
+
+    public synchronized int size() {
+        return failures.size();
+    }
+
+    private static class Entry {
+
+        final Failure failure;
+        final long expires;
+
+        Entry(Failure failure, long expires) {
+            this.failure = failure;
+            this.expires = expires;
+        }
+    }
+
+    private static class Backoff {
+
+        long delay;
+        long until;
+    }
+}
@@ -0,0 +1,10 @@
+package com.github.cris16228.fresco;
+
+/**
+ * Order in which queued work runs, highest first.
+ */
+public enum Priority {
+    VISIBLE,
+    PREFETCH,
+    BACKGROUND
+}
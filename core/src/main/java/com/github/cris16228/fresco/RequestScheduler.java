@@ -0,0 +1,229 @@
+package com.github.cris16228.fresco;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Worker pool that runs queued work by {@link Priority} and, within one priority, newest
+ * first. In a scrolling list the rows bound last are the ones on screen, so LIFO gets them
+ * loaded before rows that have already scrolled away.
+ */
+public class RequestScheduler extends ThreadPoolExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Histogram queueWait;
+    private final PausableQueue queue;
+
+    public RequestScheduler(int poolSize) {
+        this(poolSize, null);
+    }
+
+    /**
+     * @param queueWait records how long each task waited in the queue before it started
+     */
+    public RequestScheduler(int poolSize, Histogram queueWait) {
+        this(poolSize, queueWait, new PausableQueue());
+    }
+
+    private RequestScheduler(int poolSize, Histogram queueWait, PausableQueue queue) {
+        super(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue);
+        this.queueWait = queueWait;
+        this.queue = queue;
+        allowCoreThreadTimeOut(true);
+    }
+
+    public Future<?> submit(Runnable task, Priority priority) {
+        PrioritizedTask<Object> future = new PrioritizedTask<>(task, null, priority, sequence.incrementAndGet());
+        execute(future);
+        return future;
+    }
+
+    public <T> Future<T> submit(Callable<T> task, Priority priority) {
+        PrioritizedTask<T> future = new PrioritizedTask<>(task, priority, sequence.incrementAndGet());
+        execute(future);
+        return future;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Runnable task = command instanceof PrioritizedTask ? command : newTaskFor(command, null);
+        if (queue.isPaused() && !isShutdown()) {
+            // A new worker would run its first task without taking it from the queue.
+            queue.offer(task);
+        } else {
+            super.execute(task);
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new PrioritizedTask<>(runnable, value, Priority.VISIBLE, sequence.incrementAndGet());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new PrioritizedTask<>(callable, Priority.VISIBLE, sequence.incrementAndGet());
+    }
+
+    /**
+     * Holds back queued work: tasks already running finish, and workers then stop taking tasks
+     * from the queue until {@link #resume()}. The held-back tasks stay in the queue, so
+     * submitting, promoting and dequeueing keep working while paused.
+     */
+    public void pause() {
+        queue.setPaused(true);
+    }
+
+    public void resume() {
+        queue.setPaused(false);
+        // Tasks queued while paused may have found no worker to wait for them.
+        prestartAllCoreThreads();
+    }
+
+    public boolean isPaused() {
+        return queue.isPaused();
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        super.beforeExecute(thread, runnable);
+        if (queueWait != null && runnable instanceof PrioritizedTask) {
+            queueWait.record(System.nanoTime() - ((PrioritizedTask<?>) runnable).enqueued);
+        }
+    }
+
+    /**
+     * Moves a still queued task up to {@code priority}. Does nothing if the task already runs
+     * at that priority or higher, or has left the queue.
+     */
+    public void promote(Future<?> future, Priority priority) {
+        if (!(future instanceof PrioritizedTask)) return;
+        PrioritizedTask<?> task = (PrioritizedTask<?>) future;
+        if (task.priority.ordinal() <= priority.ordinal()) return;
+        if (getQueue().remove(task)) {
+            task.priority = priority;
+            task.sequence = sequence.incrementAndGet();
+            getQueue().add(task);
+        }
+    }
+
+    /**
+     * Cancels a task only if it has not started yet, removing it from the queue. Returns
+     * {@code true} if the task will not run.
+     */
+    public boolean dequeue(Future<?> future) {
+        if (future instanceof Runnable && remove((Runnable) future)) {
+            future.cancel(false);
+            return true;
+        }
+        return future.isCancelled();
+    }
+
+    /**
+     * Priority queue whose blocking takes, the only way workers get tasks, wait while paused.
+     */
+    static class PausableQueue extends PriorityBlockingQueue<Runnable> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private boolean paused;
+
+        void setPaused(boolean paused) {
+            lock.lock();
+            try {
+                this.paused = paused;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean isPaused() {
+            lock.lock();
+            try {
+                return paused;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            boolean added = super.offer(runnable);
+            lock.lock();
+            try {
+                changed.signal();
+            } finally {
+                lock.unlock();
+            }
+            return added;
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (true) {
+                    Runnable runnable = paused ? null : super.poll();
+                    if (runnable != null) return runnable;
+                    changed.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                while (true) {
+                    Runnable runnable = paused ? null : super.poll();
+                    if (runnable != null || nanos <= 0) return runnable;
+                    nanos = changed.awaitNanos(nanos);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    static class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+
+        private volatile Priority priority;
+        private volatile long sequence;
+        private final long enqueued = System.nanoTime();
+
+        PrioritizedTask(Runnable runnable, T value, Priority priority, long sequence) {
+            super(runnable, value);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        PrioritizedTask(Callable<T> callable, Priority priority, long sequence) {
+            super(callable);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask<?> other) {
+            int result = Integer.compare(priority.ordinal(), other.priority.ordinal());
+            if (result != 0) return result;
+            return Long.compare(other.sequence, sequence);
+        }
+    }
+}
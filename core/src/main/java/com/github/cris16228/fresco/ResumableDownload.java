@@ -0,0 +1,136 @@
+package com.github.cris16228.fresco;
+
+import com.github.cris16228.fresco.interfaces.Fetcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One attempt at downloading {@code url} into a {@link FileCache} temp file. If an earlier
+ * attempt left a partial with validators, it is taken over and only the rest is asked for with
+ * {@code Range} and {@code If-Range}.
+ */
+public class ResumableDownload {
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private final FileCache fileCache;
+    private final String url;
+    private final File tempFile;
+    private final Map<String, String> partial = new HashMap<>();
+    private final long offset;
+    private final boolean resuming;
+
+    public ResumableDownload(FileCache fileCache, String url) {
+        this.fileCache = fileCache;
+        this.url = url;
+        this.tempFile = fileCache.resumeTempFile(url, partial);
+        this.offset = tempFile.length();
+        this.resuming = offset > 0 && CacheControl.canResume(partial);
+    }
+
+    public File getTempFile() {
+        return tempFile;
+    }
+
+    /**
+     * Bytes already on disk from the partial, or 0 when starting over.
+     */
+    public long getOffset() {
+        return resuming ? offset : 0;
+    }
+
+    public boolean isResuming() {
+        return resuming;
+    }
+
+    /**
+     * Adds the range headers when resuming. Returns {@code false} if nothing was added, so the
+     * caller may make the request conditional instead.
+     */
+    public boolean addHeaders(Map<String, String> headers) {
+        if (!resuming) return false;
+        CacheControl.addRangeHeaders(partial, offset, headers);
+        return true;
+    }
+
+    /**
+     * Whether {@code response} continues the partial: a 206 starting where it stops. Anything
+     * else is the whole body, because the server ignored the range or the image changed.
+     */
+    public boolean appends(Fetcher.Response response) throws IOException {
+        return resuming && response.getCode() == HttpURLConnection.HTTP_PARTIAL && CacheControl.rangeStart(response) == offset;
+    }
+
+    /**
+     * Whether {@code response} carries image bytes to write: a 200, or a 206 that
+     * {@link #appends(Fetcher.Response)} the partial. Error bodies and other statuses do not.
+     */
+    public boolean accepts(Fetcher.Response response) throws IOException {
+        return response.getCode() == HttpURLConnection.HTTP_OK || appends(response);
+    }
+
+    /**
+     * Whether the partial no longer lines up with the body, so it must be dropped with
+     * {@link #abort()} and the download started over.
+     */
+    public boolean mismatched(Fetcher.Response response) throws IOException {
+        if (!resuming) return false;
+        int code = response.getCode();
+        return code == HTTP_RANGE_NOT_SATISFIABLE
+                || code == HttpURLConnection.HTTP_PARTIAL && CacheControl.rangeStart(response) != offset;
+    }
+
+    /**
+     * Length the temp file will have once the body of {@code response} is written, or -1 if
+     * the server did not say.
+     */
+    public long expectedLength(Fetcher.Response response) throws IOException {
+        long contentLength = response.getContentLength();
+        if (contentLength <= 0) return -1;
+        return appends(response) ? contentLength + offset : contentLength;
+    }
+
+    /**
+     * Writes the body of {@code response} to the temp file, after the partial when it
+     * {@link #appends(Fetcher.Response)} it and over it otherwise. Returns the bytes written.
+     */
+    public long write(Fetcher.Response response) throws IOException {
+        try (InputStream is = new BufferedInputStream(response.getBody());
+             OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile, appends(response)))) {
+            byte[] buffer = new byte[8192];
+            long written = 0;
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                os.write(buffer, 0, count);
+                written += count;
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Sets aside what was written so far with {@code metadata}, the validators of the response,
+     * for the next attempt to resume. Without a validator to resume against, the bytes are
+     * dropped.
+     */
+    public void keep(Map<String, String> metadata) {
+        if (CacheControl.canResume(metadata)) {
+            fileCache.keepPartial(url, tempFile, metadata);
+        } else {
+            fileCache.abort(tempFile);
+        }
+    }
+
+    public void abort() {
+        fileCache.abort(tempFile);
+    }
+}
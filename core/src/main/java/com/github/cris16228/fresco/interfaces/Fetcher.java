@@ -0,0 +1,37 @@
+package com.github.cris16228.fresco.interfaces;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The HTTP stack used for downloads. The default is
+ * {@link com.github.cris16228.fresco.HttpUrlFetcher}; set another with
+ * {@code FrescoEngine.Builder#fetcher(Fetcher)} to share an existing client and its
+ * connection pool. Calls come from the network pool, within the engine's per-host and global
+ * limits, so implementations must be thread-safe.
+ */
+public interface Fetcher {
+
+    /**
+     * Sends a GET for {@code url} with {@code headers}, which include the conditional and range
+     * headers of the disk cache. The response is closed by the caller.
+     */
+    Response fetch(String url, Map<String, String> headers) throws IOException;
+
+    /**
+     * A response of any status. Implementations need not throw for error statuses: the caller
+     * checks {@link #getCode()} and only reads the body of a 200 or 206 as the image.
+     */
+    interface Response extends Closeable {
+
+        int getCode() throws IOException;
+
+        String getHeader(String name);
+
+        long getContentLength();
+
+        InputStream getBody() throws IOException;
+    }
+}
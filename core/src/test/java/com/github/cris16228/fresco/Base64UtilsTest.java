@@ -0,0 +1,74 @@
+package com.github.cris16228.fresco;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Base64UtilsTest {
+
+    private static final byte[] URL_UNSAFE = {(byte) 0xfb, (byte) 0xff, (byte) 0xbf};
+
+    @Test
+    public void noWrapRoundTrips() {
+        Random random = new Random(42);
+        for (int length = 0; length <= 200; length++) {
+            byte[] input = new byte[length];
+            random.nextBytes(input);
+            String encoded = Base64Utils.encodeToString(input, Base64Utils.NO_WRAP);
+            assertFalse(encoded.contains("\n"));
+            assertArrayEquals(input, Base64Utils.decode(encoded, Base64Utils.NO_WRAP));
+        }
+    }
+
+    @Test
+    public void defaultWrapsLinesAndRoundTrips() {
+        byte[] input = new byte[100];
+        new Random(7).nextBytes(input);
+        String encoded = Base64Utils.encodeToString(input, Base64Utils.DEFAULT);
+
+        String[] lines = encoded.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(76, lines[0].length());
+        assertTrue(encoded.endsWith("\n"));
+        assertArrayEquals(input, Base64Utils.decode(encoded, Base64Utils.DEFAULT));
+
+        String crlf = Base64Utils.encodeToString(input, Base64Utils.CRLF);
+        assertEquals(encoded.replace("\n", "\r\n"), crlf);
+        assertArrayEquals(input, Base64Utils.decode(crlf, Base64Utils.DEFAULT));
+    }
+
+    @Test
+    public void urlSafeUsesTheUrlAlphabet() {
+        assertEquals("+/+/", Base64Utils.encodeToString(URL_UNSAFE, Base64Utils.NO_WRAP));
+        String encoded = Base64Utils.encodeToString(URL_UNSAFE, Base64Utils.URL_SAFE | Base64Utils.NO_WRAP);
+        assertEquals("-_-_", encoded);
+        assertArrayEquals(URL_UNSAFE, Base64Utils.decode(encoded, Base64Utils.URL_SAFE));
+
+        byte[] input = new byte[100];
+        new Random(3).nextBytes(input);
+        String wrapped = Base64Utils.encodeToString(input, Base64Utils.URL_SAFE);
+        assertEquals(Base64Utils.encodeToString(input, Base64Utils.DEFAULT).replace('+', '-').replace('/', '_'), wrapped);
+        assertArrayEquals(input, Base64Utils.decode(wrapped, Base64Utils.URL_SAFE));
+    }
+
+    @Test
+    public void paddingIsOptional() {
+        byte[] f = {'f'};
+        byte[] fo = {'f', 'o'};
+        byte[] foo = {'f', 'o', 'o'};
+        assertEquals("Zg==", Base64Utils.encodeToString(f, Base64Utils.NO_WRAP));
+        assertEquals("Zm8=", Base64Utils.encodeToString(fo, Base64Utils.NO_WRAP));
+        assertEquals("Zm9v", Base64Utils.encodeToString(foo, Base64Utils.NO_WRAP));
+        assertEquals("Zg", Base64Utils.encodeToString(f, Base64Utils.NO_WRAP | Base64Utils.NO_PADDING));
+        assertEquals("Zm8", Base64Utils.encodeToString(fo, Base64Utils.NO_WRAP | Base64Utils.NO_PADDING));
+
+        assertArrayEquals(f, Base64Utils.decode("Zg==", Base64Utils.DEFAULT));
+        assertArrayEquals(f, Base64Utils.decode("Zg", Base64Utils.DEFAULT));
+        assertArrayEquals(fo, Base64Utils.decode("Zm8", Base64Utils.URL_SAFE));
+    }
+}
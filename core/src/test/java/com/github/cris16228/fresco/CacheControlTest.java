@@ -0,0 +1,146 @@
+package com.github.cris16228.fresco;
+
+import com.github.cris16228.fresco.interfaces.Fetcher;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CacheControlTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long DEFAULT_MAX_AGE = 60_000;
+
+    @Test
+    public void entryWithoutFetchTimeIsAlwaysFresh() {
+        assertTrue(CacheControl.isFresh(new HashMap<>(), NOW));
+    }
+
+    @Test
+    public void entryIsFreshUntilItExpires() {
+        Map<String, String> metadata = new HashMap<>();
+        CacheControl.update(metadata, response("Cache-Control", "public, max-age=10"), NOW, DEFAULT_MAX_AGE);
+
+        assertEquals(String.valueOf(NOW), metadata.get(CacheControl.FETCHED));
+        assertTrue(CacheControl.isFresh(metadata, NOW + 9_999));
+        assertFalse(CacheControl.isFresh(metadata, NOW + 10_000));
+    }
+
+    @Test
+    public void maxAgeWins() {
+        assertEquals(10_000, CacheControl.freshnessLifetime(response("Cache-Control", "max-age=10"), NOW, DEFAULT_MAX_AGE));
+        assertEquals(10_000, CacheControl.freshnessLifetime(
+                response("Cache-Control", "max-age=10", "Expires", "Thu, 01 Jan 2099 00:00:00 GMT"), NOW, DEFAULT_MAX_AGE));
+    }
+
+    @Test
+    public void noCacheIsStaleAtOnce() {
+        assertEquals(0, CacheControl.freshnessLifetime(response("Cache-Control", "no-cache, max-age=10"), NOW, DEFAULT_MAX_AGE));
+        assertEquals(0, CacheControl.freshnessLifetime(response("Cache-Control", "No-Store"), NOW, DEFAULT_MAX_AGE));
+    }
+
+    @Test
+    public void expiresIsRelativeToNow() {
+        assertEquals(NOW, CacheControl.parseHttpDate("Tue, 14 Nov 2023 22:13:20 GMT"));
+        assertEquals(60_000, CacheControl.freshnessLifetime(response("Expires", "Tue, 14 Nov 2023 22:14:20 GMT"), NOW, DEFAULT_MAX_AGE));
+        assertEquals(0, CacheControl.freshnessLifetime(response("Expires", "Tue, 14 Nov 2023 22:12:20 GMT"), NOW, DEFAULT_MAX_AGE));
+        // An invalid date means already expired.
+        assertEquals(0, CacheControl.freshnessLifetime(response("Expires", "0"), NOW, DEFAULT_MAX_AGE));
+    }
+
+    @Test
+    public void defaultMaxAgeWithoutHeaders() {
+        assertEquals(DEFAULT_MAX_AGE, CacheControl.freshnessLifetime(response(), NOW, DEFAULT_MAX_AGE));
+        assertEquals(DEFAULT_MAX_AGE, CacheControl.freshnessLifetime(response("Cache-Control", "public"), NOW, DEFAULT_MAX_AGE));
+    }
+
+    @Test
+    public void notModifiedKeepsStoredValidators() {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(CacheControl.ETAG, "\"v1\"");
+        metadata.put(CacheControl.LAST_MODIFIED, "Tue, 14 Nov 2023 22:13:20 GMT");
+        CacheControl.update(metadata, response("Cache-Control", "max-age=5"), NOW, DEFAULT_MAX_AGE);
+
+        assertEquals("\"v1\"", metadata.get(CacheControl.ETAG));
+        assertEquals(String.valueOf(NOW + 5_000), metadata.get(CacheControl.EXPIRES));
+    }
+
+    @Test
+    public void conditionalHeadersCarryTheValidators() {
+        Map<String, String> metadata = new HashMap<>();
+        assertFalse(CacheControl.canRevalidate(metadata));
+        metadata.put(CacheControl.ETAG, "\"v1\"");
+        metadata.put(CacheControl.LAST_MODIFIED, "Tue, 14 Nov 2023 22:13:20 GMT");
+        assertTrue(CacheControl.canRevalidate(metadata));
+
+        Map<String, String> headers = new HashMap<>();
+        CacheControl.addConditionalHeaders(metadata, headers);
+        assertEquals("\"v1\"", headers.get("If-None-Match"));
+        assertEquals("Tue, 14 Nov 2023 22:13:20 GMT", headers.get("If-Modified-Since"));
+    }
+
+    @Test
+    public void rangeNeedsAStrongValidator() {
+        assertFalse(CacheControl.canResume(Collections.singletonMap(CacheControl.ETAG, "W/\"v1\"")));
+        assertTrue(CacheControl.canResume(Collections.singletonMap(CacheControl.ETAG, "\"v1\"")));
+        assertTrue(CacheControl.canResume(Collections.singletonMap(CacheControl.LAST_MODIFIED, "Tue, 14 Nov 2023 22:13:20 GMT")));
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(CacheControl.ETAG, "W/\"v1\"");
+        metadata.put(CacheControl.LAST_MODIFIED, "Tue, 14 Nov 2023 22:13:20 GMT");
+        Map<String, String> headers = new HashMap<>();
+        CacheControl.addRangeHeaders(metadata, 100, headers);
+        assertEquals("bytes=100-", headers.get("Range"));
+        assertEquals("Tue, 14 Nov 2023 22:13:20 GMT", headers.get("If-Range"));
+    }
+
+    @Test
+    public void rangeStartIsReadFromContentRange() {
+        assertEquals(100, CacheControl.rangeStart(response("Content-Range", "bytes 100-199/200")));
+        assertEquals(-1, CacheControl.rangeStart(response("Content-Range", "bytes */200")));
+        assertEquals(-1, CacheControl.rangeStart(response()));
+    }
+
+    /**
+     * A response with the given header name/value pairs and no body.
+     */
+    private static Fetcher.Response response(String... headers) {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            values.put(headers[i], headers[i + 1]);
+        }
+        return new Fetcher.Response() {
+            @Override
+            public int getCode() {
+                return 200;
+            }
+
+            @Override
+            public String getHeader(String name) {
+                return values.get(name);
+            }
+
+            @Override
+            public long getContentLength() {
+                return -1;
+            }
+
+            @Override
+            public InputStream getBody() {
+                return null;
+            }
+
+            @Override
+            public void close() {
+
+            }
+        };
+    }
+}
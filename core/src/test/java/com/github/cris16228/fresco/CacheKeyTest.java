@@ -0,0 +1,95 @@
+package com.github.cris16228.fresco;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CacheKeyTest {
+
+    private enum Config {ARGB_8888, RGB_565}
+
+    private static final String URL = "https://example.com/images/a.jpg";
+
+    @Test
+    public void keysAreFixedLengthHex() {
+        StringBuilder longUrl = new StringBuilder(URL);
+        for (int i = 0; i < 1000; i++) {
+            longUrl.append("?page=").append(i);
+        }
+        for (String source : new String[]{"", "a", URL, longUrl.toString()}) {
+            String key = CacheKey.of(source);
+            assertEquals(CacheKey.LENGTH, key.length());
+            assertTrue(CacheKey.isKey(key));
+        }
+    }
+
+    @Test
+    public void keysAreStable() {
+        assertEquals(CacheKey.of(URL), CacheKey.of(new String(URL.toCharArray())));
+        byte[] bytes = URL.getBytes(StandardCharsets.UTF_8);
+        assertEquals(CacheKey.of(bytes), CacheKey.of(bytes.clone()));
+    }
+
+    @Test
+    public void differentSourcesGetDifferentKeys() {
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            keys.add(CacheKey.of(URL + "?v=" + i));
+        }
+        assertEquals(10000, keys.size());
+        // Sources that differ only in their padded tail still differ.
+        assertNotEquals(CacheKey.of("abc"), CacheKey.of("abc\0"));
+        assertNotEquals(CacheKey.of(new byte[]{1, 2}), CacheKey.of(new byte[]{1, 2, 0}));
+    }
+
+    @Test
+    public void nullSourceHasNoKey() {
+        assertNull(CacheKey.of((String) null));
+        assertNull(CacheKey.of((byte[]) null));
+    }
+
+    @Test
+    public void isKeyRejectsOtherNames() {
+        assertFalse(CacheKey.isKey(null));
+        assertFalse(CacheKey.isKey("https%3A%2F%2Fexample.com%2Fa.jpg"));
+        assertFalse(CacheKey.isKey(CacheKey.of(URL) + ".tmp"));
+        assertFalse(CacheKey.isKey(CacheKey.of(URL).toUpperCase()));
+    }
+
+    @Test
+    public void sizedWithoutOptionsIsTheSourceKey() {
+        String key = CacheKey.of(URL);
+        assertSame(key, CacheKey.sized(key, 0, 0, null));
+        assertSame(key, CacheKey.sized(key, 0, 0, null, null));
+    }
+
+    @Test
+    public void sizedKeysKeepTheSourceKeyAsPrefix() {
+        String key = CacheKey.of(URL);
+        String small = CacheKey.sized(key, 100, 100, null);
+        assertTrue(small.startsWith(key + "#"));
+        assertNotEquals(small, CacheKey.sized(key, 200, 100, null));
+        assertNotEquals(small, CacheKey.sized(key, 100, 100, Config.RGB_565));
+        assertNotEquals(small, CacheKey.sized(key, 100, 100, null, "rotate(90)"));
+        assertNotEquals(CacheKey.sized(key, 100, 100, Config.ARGB_8888), CacheKey.sized(key, 100, 100, Config.RGB_565));
+        assertEquals(small, CacheKey.sized(key, 100, 100, null));
+    }
+
+    @Test
+    public void tilesKeepTheSourceKeyAsPrefix() {
+        String key = CacheKey.of(URL);
+        String tile = CacheKey.tile(key, 256, 1, 0, 1);
+        assertTrue(tile.startsWith(key + "#"));
+        assertNotEquals(tile, CacheKey.tile(key, 256, 1, 1, 0));
+        assertNotEquals(tile, CacheKey.tile(key, 256, 2, 0, 1));
+    }
+}
@@ -0,0 +1,233 @@
+package com.github.cris16228.fresco;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileCacheTest {
+
+    private static final String A = "https://example.com/a.jpg";
+    private static final String B = "https://example.com/b.jpg";
+    private static final String C = "https://example.com/c.jpg";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void committedEntryIsReturned() throws IOException {
+        FileCache cache = new FileCache(folder.getRoot());
+        assertNull(cache.get(A));
+
+        File file = put(cache, A, "abcd");
+        assertNotNull(file);
+        assertEquals(file, cache.get(A));
+        assertTrue(cache.contains(A));
+        assertEquals(CacheKey.of(A), file.getName());
+        assertEquals(4, cache.length());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void emptyTempFileIsNotCommitted() throws IOException {
+        FileCache cache = new FileCache(folder.getRoot());
+        File tempFile = cache.newTempFile(A);
+        assertTrue(tempFile.createNewFile());
+
+        assertNull(cache.commit(A, tempFile));
+        assertFalse(tempFile.exists());
+        assertFalse(cache.contains(A));
+    }
+
+    @Test
+    public void recommitReplacesTheEntrySize() throws IOException {
+        FileCache cache = new FileCache(folder.getRoot());
+        put(cache, A, "abcd");
+        put(cache, A, "ab");
+
+        assertEquals(2, cache.length());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBeyondMaxSize() throws IOException {
+        FileCache cache = new FileCache(folder.getRoot(), 10, 100);
+        File a = put(cache, A, "aaaa");
+        File b = put(cache, B, "bbbb");
+        cache.get(A);
+        put(cache, C, "cccc");
+        cache.trimToSize();
+
+        assertTrue(cache.contains(A));
+        assertFalse(cache.contains(B));
+        assertTrue(cache.contains(C));
+        assertTrue(a.exists());
+        assertFalse(b.exists());
+        assertEquals(8, cache.length());
+    }
+
+    @Test
+    public void evictsBeyondMaxEntries() throws IOException {
+        FileCache cache = new FileCache(folder.getRoot(), 1000, 2);
+        put(cache, A, "a");
+        put(cache, B, "b");
+        put(cache, C, "c");
+        cache.trimToSize();
+
+        assertEquals(2, cache.size());
+        assertFalse(cache.contains(A));
+    }
+
+    @Test
+    public void journalIsReplayedOnReopen() throws IOException {
+        FileCache cache = new FileCache(folder.getRoot());
+        put(cache, A, "aaaa", Collections.singletonMap("etag", "\"v1\""));
+        put(cache, B, "bb");
+        // Reads are journaled with the next write.
+        cache.get(A);
+        put(cache, C, "c");
+
+        FileCache reopened = new FileCache(folder.getRoot());
+        assertEquals(3, reopened.size());
+        assertEquals(7, reopened.length());
+        assertEquals("\"v1\"", reopened.getMetadata(A).get("etag"));
+
+        FileCache bounded = new FileCache(folder.getRoot(), 1000, 2);
+        bounded.trimToSize();
+        // B was used least recently, since A was read after it.
+        assertFalse(bounded.contains(B));
+        assertTrue(bounded.contains(A));
+        assertTrue(bounded.contains(C));
+    }
+
+    @Test
+    public void metadataUpdatesSurviveReopen() throws IOException {
+        FileCache cache = new FileCache(folder.getRoot());
+        put(cache, A, "aaaa", Collections.singletonMap("etag", "\"v1\""));
+        Map<String, String> update = new HashMap<>();
+        update.put("expires", "1000");
+        assertTrue(cache.putMetadata(A, update));
+        assertFalse(cache.putMetadata(B, update));
+
+        Map<String, String> metadata = new FileCache(folder.getRoot()).getMetadata(A);
+        assertEquals("\"v1\"", metadata.get("etag"));
+        assertEquals("1000", metadata.get("expires"));
+    }
+
+    @Test
+    public void removedEntryStaysRemovedAfterReopen() throws IOException {
+        FileCache cache = new FileCache(folder.getRoot());
+        File a = put(cache, A, "aaaa");
+        put(cache, B, "bb");
+
+        assertTrue(cache.clear(A));
+        assertFalse(a.exists());
+        assertNull(cache.get(A));
+        FileCache reopened = new FileCache(folder.getRoot());
+        assertFalse(reopened.contains(A));
+        assertTrue(reopened.contains(B));
+        assertEquals(2, reopened.length());
+    }
+
+    @Test
+    public void directoryIsIndexedWithoutJournal() throws IOException {
+        write(new File(folder.getRoot(), CacheKey.of(A)), "aaaa");
+        File legacy = new File(folder.getRoot(), "https%3A%2F%2Fexample.com%2Fb.jpg");
+        write(legacy, "bb");
+        File orphan = new File(folder.getRoot(), CacheKey.of(C) + ".7.tmp");
+        write(orphan, "c");
+
+        FileCache cache = new FileCache(folder.getRoot());
+        assertTrue(cache.contains(A));
+        assertEquals(1, cache.size());
+        assertEquals(4, cache.length());
+        assertFalse(legacy.exists());
+        assertFalse(orphan.exists());
+    }
+
+    @Test
+    public void corruptJournalFallsBackToTheDirectory() throws IOException {
+        write(new File(folder.getRoot(), CacheKey.of(A)), "aaaa");
+        write(new File(folder.getRoot(), ".journal"), "CLEAN " + CacheKey.of(A) + " not-a-size\n");
+
+        FileCache cache = new FileCache(folder.getRoot());
+        assertTrue(cache.contains(A));
+        assertEquals(4, cache.length());
+    }
+
+    @Test
+    public void readsCompactTheJournal() throws IOException, InterruptedException {
+        FileCache cache = new FileCache(folder.getRoot());
+        put(cache, A, "aaaa");
+        File journal = new File(folder.getRoot(), ".journal");
+        long compacted = journal.length();
+        for (int i = 0; i < FileCache.REDUNDANT_OP_COMPACT_THRESHOLD; i++) {
+            assertNotNull(cache.get(A));
+        }
+
+        // Compaction runs in the background and leaves a single line for A.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.length() > compacted && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(compacted, journal.length());
+        assertTrue(cache.contains(A));
+    }
+
+    @Test
+    public void closedCacheKeepsServingAndReopens() throws IOException {
+        FileCache cache = new FileCache(folder.getRoot(), 1000, 1);
+        put(cache, A, "aaaa");
+        cache.close();
+
+        assertNotNull(cache.get(A));
+        assertNull(put(cache, B, "bb"));
+        assertFalse(cache.contains(B));
+
+        FileCache reopened = new FileCache(folder.getRoot(), 1000, 1);
+        assertTrue(reopened.contains(A));
+        assertNotNull(put(reopened, B, "bb"));
+    }
+
+    @Test
+    public void clearRemovesEverything() throws IOException {
+        FileCache cache = new FileCache(folder.getRoot());
+        put(cache, A, "aaaa");
+        put(cache, B, "bb");
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.length());
+        assertEquals(0, new FileCache(folder.getRoot()).size());
+    }
+
+    private static File put(FileCache cache, String url, String content) throws IOException {
+        return put(cache, url, content, null);
+    }
+
+    private static File put(FileCache cache, String url, String content, Map<String, String> metadata) throws IOException {
+        File tempFile = cache.newTempFile(url);
+        write(tempFile, content);
+        return cache.commit(url, tempFile, metadata);
+    }
+
+    static void write(File file, String content) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
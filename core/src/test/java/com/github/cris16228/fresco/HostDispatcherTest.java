@@ -0,0 +1,121 @@
+package com.github.cris16228.fresco;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HostDispatcherTest {
+
+    private final List<Runnable> submitted = new ArrayList<>();
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    public void callsBeyondThePerHostLimitAreParked() {
+        HostDispatcher dispatcher = new HostDispatcher(10, 1);
+        Runnable second = call(dispatcher, "a.com", Priority.VISIBLE, "a2");
+        Runnable other = call(dispatcher, "b.com", Priority.VISIBLE, "b");
+        Runnable first = dispatcher.limit("a.com", Priority.VISIBLE, () -> {
+            second.run();
+            other.run();
+            assertEquals(1, dispatcher.parkedCount());
+            assertEquals(1, dispatcher.runningCount("a.com"));
+            assertEquals(1, dispatcher.runningCount());
+        }, submitted::add);
+
+        first.run();
+        assertEquals(Collections.singletonList("b"), ran);
+        assertEquals(Collections.singletonList(second), submitted);
+        assertEquals(0, dispatcher.parkedCount());
+
+        second.run();
+        assertEquals(Arrays.asList("b", "a2"), ran);
+        assertEquals(0, dispatcher.runningCount());
+        assertEquals(0, dispatcher.runningCount("a.com"));
+    }
+
+    @Test
+    public void callsBeyondTheGlobalLimitAreParked() {
+        HostDispatcher dispatcher = new HostDispatcher(1, 5);
+        Runnable other = call(dispatcher, "b.com", Priority.VISIBLE, "b");
+        Runnable first = dispatcher.limit("a.com", Priority.VISIBLE, () -> {
+            other.run();
+            assertEquals(1, dispatcher.parkedCount());
+        }, submitted::add);
+
+        first.run();
+        assertTrue(ran.isEmpty());
+        assertEquals(Collections.singletonList(other), submitted);
+    }
+
+    @Test
+    public void parkedCallsResumeByPriorityThenNewestFirst() {
+        HostDispatcher dispatcher = new HostDispatcher(10, 1);
+        Runnable background = call(dispatcher, "a.com", Priority.BACKGROUND, "background", Runnable::run);
+        Runnable older = call(dispatcher, "a.com", Priority.VISIBLE, "older", Runnable::run);
+        Runnable newer = call(dispatcher, "a.com", Priority.VISIBLE, "newer", Runnable::run);
+        Runnable first = dispatcher.limit("a.com", Priority.VISIBLE, () -> {
+            background.run();
+            older.run();
+            newer.run();
+            assertEquals(3, dispatcher.parkedCount());
+        }, Runnable::run);
+
+        first.run();
+        assertEquals(Arrays.asList("newer", "older", "background"), ran);
+        assertEquals(0, dispatcher.parkedCount());
+        assertEquals(0, dispatcher.runningCount());
+    }
+
+    @Test
+    public void failingWorkFreesItsSlot() {
+        HostDispatcher dispatcher = new HostDispatcher(10, 1);
+        Runnable failing = dispatcher.limit("a.com", Priority.VISIBLE, () -> {
+            throw new IllegalStateException("fetch failed");
+        }, submitted::add);
+        try {
+            failing.run();
+            fail();
+        } catch (IllegalStateException expected) {
+
+        }
+        assertEquals(0, dispatcher.runningCount("a.com"));
+
+        call(dispatcher, "a.com", Priority.VISIBLE, "next").run();
+        assertEquals(Collections.singletonList("next"), ran);
+    }
+
+    @Test
+    public void missingHostSharesOneLimit() {
+        HostDispatcher dispatcher = new HostDispatcher(10, 1);
+        Runnable second = call(dispatcher, null, Priority.VISIBLE, "second");
+        dispatcher.limit(null, Priority.VISIBLE, () -> {
+            second.run();
+            assertEquals(1, dispatcher.runningCount(null));
+        }, submitted::add).run();
+
+        assertTrue(ran.isEmpty());
+        assertEquals(Collections.singletonList(second), submitted);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void limitsMustBePositive() {
+        new HostDispatcher(0, 1);
+    }
+
+    private Runnable call(HostDispatcher dispatcher, String host, Priority priority, String name) {
+        return call(dispatcher, host, priority, name, submitted::add);
+    }
+
+    private Runnable call(HostDispatcher dispatcher, String host, Priority priority, String name,
+                          Consumer<Runnable> submit) {
+        return dispatcher.limit(host, priority, () -> ran.add(name), submit);
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.cris16228.fresco;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InFlightRequestsTest {
+
+    private InFlightRequests<String> inFlightRequests;
+    private RequestScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        inFlightRequests = new InFlightRequests<>();
+        scheduler = new RequestScheduler(1);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void concurrentLoadsOfOneKeyShareOneLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        List<InFlightRequests<String>.Request> started = new ArrayList<>();
+        InFlightRequests.Loader<String> loader = request -> {
+            loads.incrementAndGet();
+            started.add(request);
+        };
+        List<String> results = new ArrayList<>();
+        inFlightRequests.load("key", Priority.VISIBLE, loader, results::add);
+        inFlightRequests.load("key", Priority.VISIBLE, loader, results::add);
+
+        assertEquals(1, loads.get());
+        assertTrue(inFlightRequests.isLoading("key"));
+        started.get(0).complete("bitmap");
+        assertEquals(2, results.size());
+        assertEquals("bitmap", results.get(0));
+        assertEquals("bitmap", results.get(1));
+        assertFalse(inFlightRequests.isLoading("key"));
+    }
+
+    @Test
+    public void loadAfterCompletionStartsAgain() {
+        AtomicInteger loads = new AtomicInteger();
+        InFlightRequests.Loader<String> loader = request -> {
+            loads.incrementAndGet();
+            request.complete("bitmap");
+        };
+        inFlightRequests.load("key", Priority.VISIBLE, loader, null);
+        inFlightRequests.load("key", Priority.VISIBLE, loader, null);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, inFlightRequests.size());
+    }
+
+    @Test
+    public void differentKeysLoadSeparately() {
+        AtomicInteger loads = new AtomicInteger();
+        InFlightRequests.Loader<String> loader = request -> loads.incrementAndGet();
+        inFlightRequests.load("a", Priority.VISIBLE, loader, null);
+        inFlightRequests.load("b", Priority.VISIBLE, loader, null);
+
+        assertEquals(2, loads.get());
+        assertEquals(2, inFlightRequests.size());
+    }
+
+    @Test
+    public void stagesRunInOrderAndDeliverOnce() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        List<String> results = Collections.synchronizedList(new ArrayList<>());
+        inFlightRequests.load("key", Priority.VISIBLE,
+                request -> request.stage(scheduler, () -> request.stage(scheduler, () -> request.complete("decoded"))),
+                result -> {
+                    results.add(result);
+                    delivered.countDown();
+                });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("decoded"), results);
+        assertFalse(inFlightRequests.isLoading("key"));
+    }
+
+    @Test
+    public void throwingStageCompletesWithoutResult() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        String[] result = {"unset"};
+        inFlightRequests.load("key", Priority.VISIBLE, request -> request.stage(scheduler, () -> {
+            throw new IllegalStateException("step failed");
+        }), bitmap -> {
+            result[0] = bitmap;
+            delivered.countDown();
+        });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertNull(result[0]);
+        assertFalse(inFlightRequests.isLoading("key"));
+    }
+
+    @Test
+    public void errorInAStageStillCompletesTheLoad() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        inFlightRequests.load("key", Priority.VISIBLE, request -> request.stage(scheduler, () -> {
+            throw new OutOfMemoryError("decode");
+        }), bitmap -> delivered.countDown());
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertFalse(inFlightRequests.isLoading("key"));
+    }
+
+    @Test
+    public void cancellingOneWaiterKeepsTheLoadForTheOthers() {
+        List<InFlightRequests<String>.Request> started = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+        InFlightRequests<String>.Waiter first = inFlightRequests.load("key", Priority.VISIBLE, started::add, results::add);
+        inFlightRequests.load("key", Priority.VISIBLE, started::add, results::add);
+
+        first.cancel();
+        assertTrue(inFlightRequests.isLoading("key"));
+        started.get(0).complete("bitmap");
+        assertEquals(Collections.singletonList("bitmap"), results);
+    }
+
+    @Test
+    public void cancellingEveryWaiterDequeuesAQueuedStage() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+
+            }
+        }, Priority.VISIBLE);
+        List<String> cancelled = new ArrayList<>();
+        inFlightRequests.setCancellationListener(cancelled::add);
+        AtomicInteger ran = new AtomicInteger();
+        InFlightRequests<String>.Waiter waiter = inFlightRequests.load("key", Priority.VISIBLE,
+                request -> request.stage(scheduler, ran::incrementAndGet), null);
+
+        waiter.cancel();
+        release.countDown();
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, ran.get());
+        assertEquals(Collections.singletonList("key"), cancelled);
+        assertFalse(inFlightRequests.isLoading("key"));
+    }
+
+    @Test
+    public void downloadsOfOneUrlAreJoined() {
+        List<File> delivered = new ArrayList<>();
+        assertTrue(inFlightRequests.joinDownload("https://example.com/a.jpg", delivered::add));
+        assertFalse(inFlightRequests.joinDownload("https://example.com/a.jpg", delivered::add));
+        assertTrue(inFlightRequests.joinDownload("https://example.com/b.jpg", delivered::add));
+
+        File file = new File("a");
+        inFlightRequests.completeDownload("https://example.com/a.jpg", file);
+        assertEquals(2, delivered.size());
+        assertEquals(file, delivered.get(0));
+        assertEquals(file, delivered.get(1));
+        assertTrue(inFlightRequests.joinDownload("https://example.com/a.jpg", delivered::add));
+    }
+
+    @Test
+    public void throwingDownloadCallbackDoesNotStarveTheOthers() {
+        List<File> delivered = new ArrayList<>();
+        inFlightRequests.joinDownload("https://example.com/a.jpg", file -> {
+            throw new IllegalStateException("listener failed");
+        });
+        inFlightRequests.joinDownload("https://example.com/a.jpg", delivered::add);
+
+        inFlightRequests.completeDownload("https://example.com/a.jpg", null);
+        assertEquals(1, delivered.size());
+        assertTrue(inFlightRequests.joinDownload("https://example.com/a.jpg", delivered::add));
+    }
+}
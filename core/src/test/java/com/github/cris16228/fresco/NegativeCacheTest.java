@@ -0,0 +1,108 @@
+package com.github.cris16228.fresco;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NegativeCacheTest {
+
+    private static final String A = "https://a.com/1.jpg";
+    private static final String A2 = "https://a.com/2.jpg";
+    private static final String B = "https://b.com/1.jpg";
+
+    @Test
+    public void failureIsRememberedForTheTtlOfItsClass() {
+        NegativeCache cache = new NegativeCache(16, 0, 0);
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.NOT_FOUND, 0);
+        cache.recordFailure(B, "b.com", NegativeCache.Failure.TRANSIENT, 0);
+
+        long notFound = NegativeCache.Failure.NOT_FOUND.defaultTtl;
+        long transientTtl = NegativeCache.Failure.TRANSIENT.defaultTtl;
+        assertEquals(NegativeCache.Failure.NOT_FOUND, cache.check(A, "a.com", notFound - 1));
+        assertEquals(NegativeCache.Failure.TRANSIENT, cache.check(B, "b.com", transientTtl - 1));
+        assertNull(cache.check(B, "b.com", transientTtl));
+        assertNull(cache.check(A, "a.com", notFound));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void zeroTtlTurnsAClassOff() {
+        NegativeCache cache = new NegativeCache(16, 0, 0).setTtl(NegativeCache.Failure.DECODE, 0);
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.DECODE, 0);
+
+        assertNull(cache.check(A, "a.com", 0));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyCheckedFailuresGoFirst() {
+        NegativeCache cache = new NegativeCache(2, 0, 0);
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.NOT_FOUND, 0);
+        cache.recordFailure(A2, "a.com", NegativeCache.Failure.NOT_FOUND, 0);
+        cache.check(A, "a.com", 1);
+        cache.recordFailure(B, "b.com", NegativeCache.Failure.NOT_FOUND, 2);
+
+        assertEquals(2, cache.size());
+        assertEquals(NegativeCache.Failure.NOT_FOUND, cache.check(A, "a.com", 3));
+        assertNull(cache.check(A2, "a.com", 3));
+    }
+
+    @Test
+    public void transientFailuresBackTheHostOffExponentially() {
+        NegativeCache cache = new NegativeCache(16, 1000, 3000).setTtl(NegativeCache.Failure.TRANSIENT, 0);
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.TRANSIENT, 0);
+        assertEquals(NegativeCache.Failure.TRANSIENT, cache.check(A2, "a.com", 999));
+        assertNull(cache.check(A2, "a.com", 1000));
+        assertNull(cache.check(B, "b.com", 0));
+
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.TRANSIENT, 1000);
+        assertEquals(NegativeCache.Failure.TRANSIENT, cache.check(A2, "a.com", 2999));
+        assertNull(cache.check(A2, "a.com", 3000));
+
+        // Capped at the maximum.
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.TRANSIENT, 3000);
+        assertNull(cache.check(A2, "a.com", 6000));
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.TRANSIENT, 6000);
+        assertEquals(NegativeCache.Failure.TRANSIENT, cache.check(A2, "a.com", 8999));
+        assertNull(cache.check(A2, "a.com", 9000));
+    }
+
+    @Test
+    public void failuresDuringABackoffDoNotExtendIt() {
+        NegativeCache cache = new NegativeCache(16, 1000, 60000).setTtl(NegativeCache.Failure.TRANSIENT, 0);
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.TRANSIENT, 0);
+        cache.recordFailure(A2, "a.com", NegativeCache.Failure.TRANSIENT, 500);
+
+        assertNull(cache.check(A, "a.com", 1000));
+        // The next backoff after it ended is the doubled one.
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.TRANSIENT, 1000);
+        assertEquals(NegativeCache.Failure.TRANSIENT, cache.check(A, "a.com", 2999));
+    }
+
+    @Test
+    public void otherFailuresDoNotBackTheHostOff() {
+        NegativeCache cache = new NegativeCache(16, 1000, 60000);
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.NOT_FOUND, 0);
+
+        assertNull(cache.check(A2, "a.com", 0));
+    }
+
+    @Test
+    public void successClearsTheFailureAndTheBackoff() {
+        NegativeCache cache = new NegativeCache(16, 1000, 60000);
+        cache.recordFailure(A, "a.com", NegativeCache.Failure.TRANSIENT, 0);
+        cache.recordSuccess(A, "a.com");
+
+        assertNull(cache.check(A, "a.com", 0));
+        assertNull(cache.check(A2, "a.com", 0));
+        // The backoff starts over from the base delay.
+        cache.recordFailure(A2, "a.com", NegativeCache.Failure.TRANSIENT, 0);
+        assertNull(cache.check(B, "a.com", 1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void backoffMustNotExceedItsMaximum() {
+        new NegativeCache(16, 2000, 1000);
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.cris16228.fresco;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestSchedulerTest {
+
+    private final RequestScheduler scheduler = new RequestScheduler(1);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void runsByPriorityThenNewestFirst() throws Exception {
+        CountDownLatch release = block();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        scheduler.submit(() -> order.add("background"), Priority.BACKGROUND);
+        scheduler.submit(() -> order.add("old"), Priority.VISIBLE);
+        scheduler.submit(() -> order.add("new"), Priority.VISIBLE);
+
+        release.countDown();
+        awaitIdle();
+        assertEquals(Arrays.asList("new", "old", "background"), order);
+    }
+
+    @Test
+    public void pausedWorkStaysQueued() throws Exception {
+        scheduler.pause();
+        CountDownLatch ran = new CountDownLatch(1);
+        Future<?> dequeued = scheduler.submit(ran::countDown, Priority.VISIBLE);
+        scheduler.submit(ran::countDown, Priority.VISIBLE);
+
+        assertFalse(ran.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, scheduler.getQueue().size());
+        assertTrue(scheduler.dequeue(dequeued));
+        assertEquals(1, scheduler.getQueue().size());
+
+        scheduler.resume();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        awaitIdle();
+        assertTrue(dequeued.isCancelled());
+    }
+
+    @Test
+    public void pausingLetsRunningWorkFinish() throws Exception {
+        CountDownLatch release = block();
+        scheduler.pause();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        Future<?> background = scheduler.submit(() -> order.add("background"), Priority.BACKGROUND);
+        scheduler.submit(() -> order.add("visible"), Priority.VISIBLE);
+
+        release.countDown();
+        Thread.sleep(200);
+        assertTrue(order.isEmpty());
+        assertEquals(2, scheduler.getQueue().size());
+        scheduler.promote(background, Priority.VISIBLE);
+
+        scheduler.resume();
+        awaitIdle();
+        assertEquals(Arrays.asList("background", "visible"), order);
+    }
+
+    /**
+     * Occupies the only worker until the returned latch is released.
+     */
+    private CountDownLatch block() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+
+            }
+        }, Priority.VISIBLE);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
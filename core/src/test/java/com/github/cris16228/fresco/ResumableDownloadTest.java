@@ -0,0 +1,211 @@
+package com.github.cris16228.fresco;
+
+import com.github.cris16228.fresco.interfaces.Fetcher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResumableDownloadTest {
+
+    private static final String BODY = "0123456789abcdefghij";
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+    private FileCache fileCache;
+    private final Fetcher fetcher = new HttpUrlFetcher();
+    private volatile String etag = ETAG;
+    private volatile boolean honourRange = true;
+    private volatile String lastRange;
+    private volatile String lastIfRange;
+    private volatile int errorCode;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/image.jpg", this::serve);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/image.jpg";
+        fileCache = new FileCache(folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Honours {@code Range} only while {@code If-Range} still names the current ETag.
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        lastRange = exchange.getRequestHeaders().getFirst("Range");
+        lastIfRange = exchange.getRequestHeaders().getFirst("If-Range");
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (errorCode != 0) {
+            byte[] page = "<html>Not here</html>".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(errorCode, page.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(page);
+            }
+            return;
+        }
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        if (lastRange != null && honourRange && etag.equals(lastIfRange)) {
+            int from = Integer.parseInt(lastRange.substring("bytes=".length(), lastRange.length() - 1));
+            if (from >= body.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + body.length);
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + (body.length - 1) + "/" + body.length);
+            exchange.sendResponseHeaders(206, body.length - from);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body, from, body.length - from);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    @Test
+    public void partialResponseIsAppended() throws IOException {
+        keepPartial("0123456789", ETAG);
+
+        File file = run();
+        assertEquals("bytes=10-", lastRange);
+        assertEquals(ETAG, lastIfRange);
+        assertEquals(BODY, read(file));
+    }
+
+    @Test
+    public void fullResponseAfterIfRangeReplacesThePartial() throws IOException {
+        keepPartial("0123456789", ETAG);
+        etag = "\"v2\"";
+
+        File file = run();
+        assertEquals(ETAG, lastIfRange);
+        assertEquals(BODY, read(file));
+    }
+
+    @Test
+    public void ignoredRangeReplacesThePartial() throws IOException {
+        keepPartial("0123456789", ETAG);
+        honourRange = false;
+
+        assertEquals(BODY, read(run()));
+    }
+
+    @Test
+    public void unsatisfiableRangeDiscardsThePartial() throws IOException {
+        keepPartial(BODY + "extra", ETAG);
+
+        ResumableDownload download = new ResumableDownload(fileCache, url);
+        Map<String, String> headers = new HashMap<>();
+        assertTrue(download.addHeaders(headers));
+        try (Fetcher.Response response = fetcher.fetch(url, headers)) {
+            assertTrue(download.mismatched(response));
+        }
+        download.abort();
+
+        ResumableDownload retry = new ResumableDownload(fileCache, url);
+        assertFalse(retry.isResuming());
+        assertEquals(0, retry.getTempFile().length());
+        retry.abort();
+    }
+
+    @Test
+    public void weakValidatorDoesNotKeepThePartial() throws IOException {
+        ResumableDownload download = new ResumableDownload(fileCache, url);
+        Files.write(download.getTempFile().toPath(), "0123".getBytes(StandardCharsets.UTF_8));
+        download.keep(Collections.singletonMap(CacheControl.ETAG, "W/\"v1\""));
+
+        ResumableDownload retry = new ResumableDownload(fileCache, url);
+        assertFalse(retry.isResuming());
+        assertFalse(retry.addHeaders(new HashMap<>()));
+        retry.abort();
+    }
+
+    @Test
+    public void errorStatusesAreNotAccepted() throws IOException {
+        for (int code : new int[]{404, 500}) {
+            errorCode = code;
+            ResumableDownload download = new ResumableDownload(fileCache, url);
+            try (Fetcher.Response response = fetcher.fetch(url, new HashMap<>())) {
+                assertEquals(code, response.getCode());
+                assertFalse(download.accepts(response));
+            }
+            download.abort();
+        }
+        errorCode = 0;
+        ResumableDownload download = new ResumableDownload(fileCache, url);
+        try (Fetcher.Response response = fetcher.fetch(url, new HashMap<>())) {
+            assertTrue(download.accepts(response));
+        }
+        download.abort();
+    }
+
+    @Test
+    public void freshDownloadAsksForEverything() throws IOException {
+        File file = run();
+        assertNull(lastRange);
+        assertEquals(BODY, read(file));
+    }
+
+    /**
+     * Leaves {@code content} as a partial, as an interrupted download with {@code etag} would.
+     */
+    private void keepPartial(String content, String etag) throws IOException {
+        ResumableDownload download = new ResumableDownload(fileCache, url);
+        Files.write(download.getTempFile().toPath(), content.getBytes(StandardCharsets.UTF_8));
+        download.keep(Collections.singletonMap(CacheControl.ETAG, etag));
+    }
+
+    /**
+     * Downloads {@code url} the way the loader does and returns the committed file.
+     */
+    private File run() throws IOException {
+        ResumableDownload download = new ResumableDownload(fileCache, url);
+        Map<String, String> headers = new HashMap<>();
+        download.addHeaders(headers);
+        try (Fetcher.Response response = fetcher.fetch(url, headers)) {
+            assertFalse(download.mismatched(response));
+            assertTrue(download.accepts(response));
+            long expected = download.expectedLength(response);
+            download.write(response);
+            assertEquals(expected, download.getTempFile().length());
+        }
+        return fileCache.commit(url, download.getTempFile());
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
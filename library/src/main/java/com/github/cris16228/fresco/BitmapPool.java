@@ -0,0 +1,170 @@
+package com.github.cris16228.fresco;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Recycled bitmaps kept for {@link BitmapFactory.Options#inBitmap}, bucketed by config and
+ * allocation size and bounded by a byte budget. The least recently pooled bitmap is dropped
+ * first when the budget is exceeded.
+ */
+public class BitmapPool {
+
+    /**
+     * A candidate may be at most this many times larger than the request, so a small thumbnail
+     * decode does not pin a full-screen allocation.
+     */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final Map<Bitmap.Config, TreeMap<Integer, ArrayDeque<Bitmap>>> buckets = new EnumMap<>(Bitmap.Config.class);
+    private final LinkedHashSet<Bitmap> order = new LinkedHashSet<>();
+    private long maxSize;
+    private long size;
+
+    public BitmapPool(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public synchronized boolean put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null
+                || bitmap.getConfig() == Bitmap.Config.HARDWARE || order.contains(bitmap)) {
+            return false;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > maxSize) {
+            return false;
+        }
+        TreeMap<Integer, ArrayDeque<Bitmap>> sizes = buckets.get(bitmap.getConfig());
+        if (sizes == null) {
+            sizes = new TreeMap<>();
+            buckets.put(bitmap.getConfig(), sizes);
+        }
+        ArrayDeque<Bitmap> bucket = sizes.get(bytes);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            sizes.put(bytes, bucket);
+        }
+        bucket.addLast(bitmap);
+        order.add(bitmap);
+        size += bytes;
+        trimToSize(maxSize);
+        return true;
+    }
+
+    /**
+     * Returns a pooled bitmap large enough to decode a {@code width} x {@code height} image
+     * with {@code config} into, or {@code null} when nothing suitable is pooled.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        if (width <= 0 || height <= 0) return null;
+        if (config == null) config = Bitmap.Config.ARGB_8888;
+        TreeMap<Integer, ArrayDeque<Bitmap>> sizes = buckets.get(config);
+        if (sizes == null) return null;
+        long required = (long) width * height * bytesPerPixel(config);
+        if (required > Integer.MAX_VALUE) return null;
+        Integer bytes = sizes.ceilingKey((int) required);
+        if (bytes == null || bytes > required * MAX_SIZE_MULTIPLE) return null;
+        ArrayDeque<Bitmap> bucket = sizes.get(bytes);
+        Bitmap bitmap = bucket.pollLast();
+        if (bucket.isEmpty()) {
+            sizes.remove(bytes);
+        }
+        order.remove(bitmap);
+        size -= bytes;
+        return bitmap;
+    }
+
+    public synchronized void trimToSize(long targetSize) {
+        Iterator<Bitmap> iterator = order.iterator();
+        while (size > targetSize && iterator.hasNext()) {
+            Bitmap eldest = iterator.next();
+            iterator.remove();
+            int bytes = eldest.getAllocationByteCount();
+            TreeMap<Integer, ArrayDeque<Bitmap>> sizes = buckets.get(eldest.getConfig());
+            if (sizes != null) {
+                ArrayDeque<Bitmap> bucket = sizes.get(bytes);
+                if (bucket != null) {
+                    bucket.remove(eldest);
+                    if (bucket.isEmpty()) {
+                        sizes.remove(bytes);
+                    }
+                }
+            }
+            size -= bytes;
+            eldest.recycle();
+        }
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return order.size();
+    }
+
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Drops pooled bitmaps in the same steps as {@link MemoryCache#trimMemory(int)}: half of
+     * the pool while the app runs low or is hidden, all of it once in the background.
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize / 2);
+        }
+    }
+
+    /**
+     * Fills in {@code inBitmap} for a decode whose bounds are already in {@code options}, taking
+     * into account the sample size and density scaling that will be applied.
+     */
+    public void prepare(BitmapFactory.Options options) {
+        if (options.outWidth <= 0 || options.outHeight <= 0) return;
+        int sample = Math.max(1, options.inSampleSize);
+        double width = Math.ceil(options.outWidth / (double) sample);
+        double height = Math.ceil(options.outHeight / (double) sample);
+        if (options.inScaled && options.inDensity > 0 && options.inTargetDensity > 0) {
+            double scale = options.inTargetDensity / (double) options.inDensity;
+            width = Math.ceil(width * scale);
+            height = Math.ceil(height * scale);
+        }
+        options.inMutable = true;
+        options.inBitmap = get((int) width, (int) height, options.inPreferredConfig);
+    }
+
+    static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case RGBA_F16:
+                return 8;
+            default:
+                return 4;
+        }
+    }
+}
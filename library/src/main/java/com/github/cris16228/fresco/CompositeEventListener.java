@@ -0,0 +1,105 @@
+package com.github.cris16228.fresco;
+
+import android.graphics.Bitmap;
+
+import com.github.cris16228.fresco.interfaces.EventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Forwards every event to each of its listeners in order. A listener that throws does not
+ * keep the others from being called.
+ */
+class CompositeEventListener implements EventListener {
+
+    private final List<EventListener> listeners = new ArrayList<>();
+
+    CompositeEventListener(EventListener... listeners) {
+        for (EventListener listener : Arrays.asList(listeners)) {
+            if (listener != null) {
+                this.listeners.add(listener);
+            }
+        }
+    }
+
+    private interface Event {
+        void dispatch(EventListener listener);
+    }
+
+    private void dispatch(Event event) {
+        for (EventListener listener : listeners) {
+            try {
+                event.dispatch(listener);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void onRequestStart(String url) {
+        dispatch(listener -> listener.onRequestStart(url));
+    }
+
+    @Override
+    public void onMemoryCacheHit(String url) {
+        dispatch(listener -> listener.onMemoryCacheHit(url));
+    }
+
+    @Override
+    public void onMemoryCacheMiss(String url) {
+        dispatch(listener -> listener.onMemoryCacheMiss(url));
+    }
+
+    @Override
+    public void onDiskCacheHit(String url) {
+        dispatch(listener -> listener.onDiskCacheHit(url));
+    }
+
+    @Override
+    public void onDiskCacheMiss(String url) {
+        dispatch(listener -> listener.onDiskCacheMiss(url));
+    }
+
+    @Override
+    public void onFetchEnd(String url, int code, long bytes, long durationNanos) {
+        dispatch(listener -> listener.onFetchEnd(url, code, bytes, durationNanos));
+    }
+
+    @Override
+    public void onFetchFailed(String url, Exception error) {
+        dispatch(listener -> listener.onFetchFailed(url, error));
+    }
+
+    @Override
+    public void onFetchSkipped(String url) {
+        dispatch(listener -> listener.onFetchSkipped(url));
+    }
+
+    @Override
+    public void onDecodeEnd(String url, Bitmap bitmap, long durationNanos) {
+        dispatch(listener -> listener.onDecodeEnd(url, bitmap, durationNanos));
+    }
+
+    @Override
+    public void onOutOfMemory(String url) {
+        dispatch(listener -> listener.onOutOfMemory(url));
+    }
+
+    @Override
+    public void onCancelled(String key) {
+        dispatch(listener -> listener.onCancelled(key));
+    }
+
+    @Override
+    public void onRequestEnd(String url, boolean success) {
+        dispatch(listener -> listener.onRequestEnd(url, success));
+    }
+
+    @Override
+    public void onRequestCancelled(String url) {
+        dispatch(listener -> listener.onRequestCancelled(url));
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.cris16228.fresco;
+
+import android.graphics.Bitmap;
+
+/**
+ * Turns the config a request asks for into the one its decode uses. {@code HARDWARE} and
+ * {@code RGB_565} are treated as preferences:
+ * <ul>
+ * <li>{@code HARDWARE} keeps pixels out of the Java heap but cannot be read, drawn into or
+ * pooled, so a decode whose result is transformed falls back to {@code ARGB_8888}.</li>
+ * <li>{@code RGB_565} halves the size but drops alpha, so it is only used for formats without
+ * transparency and falls back to {@code ARGB_8888} for the rest.</li>
+ * </ul>
+ */
+final class DecodeConfigs {
+
+    private DecodeConfigs() {
+    }
+
+    /**
+     * The config to decode with when the pixels of the result will be read or drawn over.
+     */
+    static Bitmap.Config software(Bitmap.Config requested) {
+        return requested == Bitmap.Config.HARDWARE ? Bitmap.Config.ARGB_8888 : requested;
+    }
+
+    /**
+     * Settles {@code requested} once the bounds pass has reported {@code mimeType}.
+     */
+    static Bitmap.Config resolve(Bitmap.Config requested, String mimeType) {
+        if (requested == null) return Bitmap.Config.ARGB_8888;
+        if (requested == Bitmap.Config.RGB_565 && !isOpaque(mimeType)) return Bitmap.Config.ARGB_8888;
+        return requested;
+    }
+
+    /**
+     * Whether images of {@code mimeType} never carry alpha. PNG, WebP, GIF and HEIF all can.
+     */
+    static boolean isOpaque(String mimeType) {
+        return "image/jpeg".equals(mimeType);
+    }
+
+    static boolean isHardware(Bitmap.Config config) {
+        return config == Bitmap.Config.HARDWARE;
+    }
+}
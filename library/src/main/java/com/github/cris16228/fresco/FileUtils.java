@@ -3,61 +3,205 @@ package com.github.cris16228.fresco;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 public class FileUtils {
 
+    private static final int HEADER_MARK_LIMIT = 1024 * 1024;
+
+    private final BitmapPool bitmapPool;
+
     public FileUtils() {
+        this(null);
+    }
 
+    public FileUtils(BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+    }
+
+    public BitmapPool getBitmapPool() {
+        return bitmapPool;
     }
 
     protected Bitmap decodeFile(File file) {
+        return decodeFile(file, 0, 0, null);
+    }
+
+    protected Bitmap decodeFile(File file, int reqWidth, int reqHeight, Bitmap.Config config) {
+        return decodeFile(file, reqWidth, reqHeight, config, null);
+    }
+
+    /**
+     * As {@link #decodeFile(File, int, int, Bitmap.Config)}, sizing from a known {@code header}
+     * instead of reading the bounds from the file.
+     */
+    protected Bitmap decodeFile(File file, int reqWidth, int reqHeight, Bitmap.Config config, ImageHeader header) {
         if (file == null || !file.exists()) return null;
-        boolean fullResolution = true;
-        if (fullResolution) {
-            return BitmapFactory.decodeFile(file.getAbsolutePath());
+        return decodeSampledFile(file.getAbsolutePath(), reqWidth, reqHeight, config, bitmapPool, header);
+    }
+
+    static Bitmap decodeSampledFile(String path, int reqWidth, int reqHeight, Bitmap.Config config, BitmapPool pool) {
+        return decodeSampledFile(path, reqWidth, reqHeight, config, pool, null);
+    }
+
+    /**
+     * Decodes {@code path} subsampled to about {@code reqWidth} x {@code reqHeight}. The config is
+     * settled by {@link DecodeConfigs#resolve(Bitmap.Config, String)} from the image format. With
+     * a {@code header} the file is opened once, for the pixels.
+     */
+    static Bitmap decodeSampledFile(String path, int reqWidth, int reqHeight, Bitmap.Config config, BitmapPool pool, ImageHeader header) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (header != null) {
+            header.applyTo(options);
+        } else if (reqWidth <= 0 && reqHeight <= 0 && pool == null && config != Bitmap.Config.RGB_565) {
+            options.inPreferredConfig = DecodeConfigs.resolve(config, null);
+            return BitmapFactory.decodeFile(path, options);
+        } else {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(path, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+        options.inPreferredConfig = DecodeConfigs.resolve(config, options.outMimeType);
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        applyScale(options, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        try {
+            return decode(options, pool, o -> BitmapFactory.decodeFile(path, o));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
-        try (FileInputStream fis = new FileInputStream(file)) {
-            BitmapFactory.Options options = new BitmapFactory.Options();
+    }
+
+    interface Decoder {
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+
+    /**
+     * Runs {@code decoder} with a pooled {@code inBitmap} when one fits. If the decoder rejects
+     * the candidate it goes back to the pool and the decode is retried without reuse. Hardware
+     * decodes never reuse a bitmap.
+     */
+    static Bitmap decode(BitmapFactory.Options options, BitmapPool pool, Decoder decoder) throws IOException {
+        if (pool == null || DecodeConfigs.isHardware(options.inPreferredConfig)) {
+            return clearScaleDensity(decoder.decode(options), options);
+        }
+        pool.prepare(options);
+        Bitmap candidate = options.inBitmap;
+        try {
+            Bitmap bitmap = decoder.decode(options);
+            if (bitmap == null && candidate != null) {
+                pool.put(candidate);
+            }
+            return clearScaleDensity(bitmap, options);
+        } catch (IllegalArgumentException e) {
+            if (candidate == null) throw e;
+            options.inBitmap = null;
+            pool.put(candidate);
+            return clearScaleDensity(decoder.decode(options), options);
+        }
+    }
+
+    protected Bitmap decodeStream(InputStream stream, int reqWidth, int reqHeight, Bitmap.Config config) {
+        return decodeStream(stream, reqWidth, reqHeight, config, null);
+    }
+
+    /**
+     * Decodes {@code stream} in a single pass at the target size. The header is read under a
+     * mark and replayed for the real decode, and left in {@code header[0]} when given. Returns
+     * {@code null} if the header did not fit in the mark or the pooled bitmap was rejected; the
+     * stream cannot be rewound for a retry.
+     */
+    protected Bitmap decodeStream(InputStream stream, int reqWidth, int reqHeight, Bitmap.Config config, ImageHeader[] header) {
+        InputStream in = new BufferedInputStream(stream, 16 * 1024);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        try {
+            in.mark(HEADER_MARK_LIMIT);
             options.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(fis, null, options);
-            int originalWidth = options.outWidth;
-            int originalHeight = options.outHeight;
-            if (originalWidth <= 0 || originalHeight <= 0) return null;
-
-            int scale = 1;
-            int targetSize = 1024;
-            while (originalWidth / 2 > targetSize && originalHeight / 2 > targetSize) {
-                originalWidth /= 2;
-                originalHeight /= 2;
-                scale *= 2;
+            BitmapFactory.decodeStream(in, null, options);
+            in.reset();
+            if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+            if (header != null) {
+                header[0] = ImageHeader.of(options);
             }
-            options.inSampleSize = scale;
+            options.inPreferredConfig = DecodeConfigs.resolve(config, options.outMimeType);
+
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+            applyScale(options, reqWidth, reqHeight);
             options.inJustDecodeBounds = false;
-            options.inPreferredConfig = Bitmap.Config.RGB_565;
-            try (FileInputStream fileInputStream = new FileInputStream(file)) {
-                return BitmapFactory.decodeStream(fileInputStream, null, options);
+            if (bitmapPool != null && !DecodeConfigs.isHardware(options.inPreferredConfig)) {
+                bitmapPool.prepare(options);
+            }
+            Bitmap candidate = options.inBitmap;
+            try {
+                Bitmap bitmap = BitmapFactory.decodeStream(in, null, options);
+                if (bitmap == null && candidate != null) {
+                    bitmapPool.put(candidate);
+                }
+                return clearScaleDensity(bitmap, options);
+            } catch (IllegalArgumentException e) {
+                if (candidate != null) {
+                    bitmapPool.put(candidate);
+                }
+                return null;
             }
-        } catch (Exception exception) {
-            exception.printStackTrace();
+        } catch (IOException | OutOfMemoryError e) {
+            e.printStackTrace();
             return null;
         }
     }
 
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 && reqHeight <= 0) return inSampleSize;
+        if (height > reqHeight || width > reqWidth) {
+            int halfHeight = height / 2;
+            int halfWidth = width / 2;
+            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
+                inSampleSize *= 2;
+            }
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Scales the subsampled image the rest of the way down so it still covers the target on
+     * both axes. A dimension of 0 leaves that axis unconstrained. The densities only drive the
+     * decoder; {@link #clearScaleDensity(Bitmap, BitmapFactory.Options)} takes them off the result.
+     */
+    static void applyScale(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        int sampledWidth = options.outWidth / options.inSampleSize;
+        int sampledHeight = options.outHeight / options.inSampleSize;
+        if (sampledWidth <= 0 || sampledHeight <= 0) return;
+        float widthScale = reqWidth > 0 ? reqWidth / (float) sampledWidth : 0;
+        float heightScale = reqHeight > 0 ? reqHeight / (float) sampledHeight : 0;
+        float scale = Math.max(widthScale, heightScale);
+        if (scale <= 0 || scale >= 1) return;
+        options.inScaled = true;
+        options.inDensity = sampledWidth;
+        options.inTargetDensity = Math.max(1, Math.round(sampledWidth * scale));
+    }
+
+    /**
+     * A decode scaled by {@link #applyScale(BitmapFactory.Options, int, int)} comes out with its
+     * pixel-count density, which would make a BitmapDrawable rescale it. It is drawn at its pixel
+     * size instead, like an unscaled decode.
+     */
+    static Bitmap clearScaleDensity(Bitmap bitmap, BitmapFactory.Options options) {
+        if (bitmap != null && options.inScaled && options.inDensity > 0) {
+            bitmap.setDensity(Bitmap.DENSITY_NONE);
+        }
+        return bitmap;
+    }
+
     protected void copyStream(InputStream is, OutputStream os) {
         try {
-            byte[] buffer = new byte[8192];
-            int count;
-            long progress = 0;
-            while ((count = is.read(buffer)) != -1) {
-                os.write(buffer, 0, count);
-                progress += count;
-            }
-            os.flush();
+            copy(is, os);
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -69,4 +213,20 @@ public class FileUtils {
             }
         }
     }
+
+    /**
+     * Copies {@code is} to {@code os} without closing either. Unlike
+     * {@link #copyStream(InputStream, OutputStream)}, a failed read is reported to the caller.
+     */
+    static long copy(InputStream is, OutputStream os) throws IOException {
+        byte[] buffer = new byte[8192];
+        int count;
+        long progress = 0;
+        while ((count = is.read(buffer)) != -1) {
+            os.write(buffer, 0, count);
+            progress += count;
+        }
+        os.flush();
+        return progress;
+    }
 }
@@ -3,51 +3,51 @@ package com.github.cris16228.fresco;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
+import android.graphics.ImageDecoder;
 import android.media.ExifInterface;
-import android.media.MediaMetadataRetriever;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
-import android.util.Base64;
 import android.util.Log;
 import android.widget.ImageView;
 
 import androidx.annotation.NonNull;
+import androidx.lifecycle.LifecycleOwner;
 
+import com.github.cris16228.fresco.interfaces.EventListener;
+import com.github.cris16228.fresco.interfaces.Fetcher;
 import com.github.cris16228.fresco.interfaces.LoadImage;
+import com.github.cris16228.fresco.interfaces.Transformation;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class Fresco {
 
-    private static final int THREAD_POOL_SIZE = 4;
-    private final Map<WeakReference<ImageView>, String> imageViews = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
     private final Map<Uri, Future<?>> loadingTasks = new HashMap<>();
+    private FrescoEngine engine;
+    private Map<ImageView, String> imageViews;
+    private InFlightRequests<Bitmap> inFlightRequests;
     private MemoryCache memoryCache;
     private FileCache fileCache;
-    private ExecutorService executor;
     private FileUtils fileUtils;
     private Context context;
     private boolean asBitmap = false;
@@ -58,6 +58,13 @@ public class Fresco {
     private int width;
     private int height;
     private Rotation rotation = Rotation.NONE;
+    private Bitmap.Config config = Bitmap.Config.ARGB_8888;
+    private boolean configSet;
+    private Priority priority = Priority.VISIBLE;
+    private boolean bypassNegativeCache;
+    private final List<Transformation> transformations = new ArrayList<>();
+    private EventListener events;
+    private RequestManager requestManager;
 
     public enum Rotation {
         ROTATE_90(90),
@@ -90,21 +97,60 @@ public class Fresco {
 
 
     public static Fresco with(Context context) {
+        FrescoEngine engine = FrescoEngine.get(context);
         Fresco loader = new Fresco();
-        loader.fileCache = new FileCache(context);
-        loader.executor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
-        loader.handler = new Handler(Looper.getMainLooper());
-        loader.fileUtils = new FileUtils();
-        loader.context = context;
-        loader.memoryCache = new MemoryCache(context);
+        loader.engine = engine;
+        loader.fileCache = engine.getFileCache();
+        loader.handler = engine.getHandler();
+        loader.fileUtils = engine.getFileUtils();
+        loader.context = engine.getContext();
+        loader.memoryCache = engine.getMemoryCache();
+        loader.imageViews = engine.getImageViews();
+        loader.inFlightRequests = engine.getInFlightRequests();
+        loader.events = engine.getEventListener();
+        loader.config = engine.getDefaultConfig();
+        if (context instanceof LifecycleOwner && Looper.myLooper() == Looper.getMainLooper()) {
+            loader.requestManager = engine.getRequestManager((LifecycleOwner) context);
+        }
         return loader;
     }
 
+    /**
+     * Binds the requests of this loader to {@code owner}: they are cancelled when it is
+     * destroyed, and held back while it is stopped. Activities passed to {@link #with(Context)}
+     * are bound automatically; use this for a fragment's view lifecycle. Main thread only.
+     */
+    public Fresco lifecycle(LifecycleOwner owner) {
+        requestManager = engine.getRequestManager(owner);
+        return this;
+    }
+
+    /**
+     * Holds back disk reads and decodes of every request until {@link #resumeRequests()}. Meant
+     * for scroll listeners, to keep decoding off the CPU while a list flings.
+     */
+    public void pauseRequests() {
+        engine.pauseRequests();
+    }
+
+    public void resumeRequests() {
+        engine.resumeRequests();
+    }
+
     public Fresco asBitmap() {
         asBitmap = true;
         return this;
     }
 
+    /**
+     * Fetches even if the URL failed recently or its host is backing off, e.g. when the user
+     * asks to retry. A success clears the failure.
+     */
+    public Fresco skipNegativeCache() {
+        bypassNegativeCache = true;
+        return this;
+    }
+
     public Fresco load(String url) {
         this.urlPath = url;
         return this;
@@ -115,87 +161,201 @@ public class Fresco {
         return this;
     }
 
+    /**
+     * Receives the events of this request, in addition to the engine-wide listeners.
+     */
+    public Fresco listener(EventListener listener) {
+        events = new CompositeEventListener(engine.getEventListener(), listener);
+        return this;
+    }
+
     public Fresco rotate(Rotation rotation) {
         this.rotation = rotation;
         return this;
     }
 
+    /**
+     * Applies {@code transformations} in order after decoding, after any {@link #rotate(Rotation)}.
+     * The result is cached under the chain, so showing it again costs no new transform.
+     */
+    public Fresco transform(Transformation... transformations) {
+        this.transformations.addAll(Arrays.asList(transformations));
+        return this;
+    }
+
+    /**
+     * Config to decode with. {@code HARDWARE} is used for plain display and falls back to
+     * {@code ARGB_8888} when the result is transformed; {@code RGB_565} is used for JPEGs and
+     * falls back to {@code ARGB_8888} for formats that can carry alpha.
+     */
+    public Fresco config(Bitmap.Config config) {
+        this.config = config;
+        this.configSet = true;
+        return this;
+    }
+
+    public Fresco priority(Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
     public Fresco into(ImageView imageView) {
         if (imageView == null || urlPath == null) {
             return this;
         }
         imageView.setImageBitmap(null);
         imageView.setImageDrawable(null);
+        cancelRequest(imageView);
         imageView.setTag(urlPath);
+        final String url = urlPath;
+        if (requestManager != null) {
+            if (requestManager.isDestroyed()) {
+                return this;
+            }
+            requestManager.track(imageView, url, () -> cancelRequest(imageView), () -> load(url).into(imageView));
+            if (requestManager.isPaused()) {
+                return this;
+            }
+        }
+        imageViews.put(imageView, url);
+        StartedRequest started = start(url, imageView);
 
-        executor.execute(() -> {
-            Object[] cached = memoryCache.get(urlPath);
-            Bitmap bitmap = null;
-            String path = null;
-
-            if (cached != null && cached.length > 0) {
-                bitmap = (Bitmap) cached[0];
-                if (cached.length > 1) {
-                    path = (String) cached[1];
+        if (width > 0 || height > 0) {
+            load(url, imageView, width, height, started);
+        } else {
+            ViewSizeResolver.resolve(imageView, (targetWidth, targetHeight) -> {
+                if (url.equals(imageView.getTag())) {
+                    load(url, imageView, targetWidth, targetHeight, started);
                 }
-            }
-            if (bitmap != null && rotation != Rotation.NONE) {
-                int rotationDegree = getRotationDegree(rotation, path);
-                if (rotationDegree != 0) {
-                    bitmap = rotateImage(bitmap, rotationDegree);
-                    if (bitmap == null) {
-                        Log.e("Fresco", "Rotation failed");
-                    }
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Reports the start of a request for {@code imageView}. Its end is reported through the
+     * returned handle, or as cancelled by {@link #cancelRequest(ImageView)}.
+     */
+    private StartedRequest start(String url, ImageView imageView) {
+        StartedRequest started = new StartedRequest(url, events);
+        events.onRequestStart(url);
+        imageView.setTag(R.id.fresco_started, started);
+        return started;
+    }
+
+    private void load(String url, ImageView imageView, int targetWidth, int targetHeight, StartedRequest started) {
+        String transformationKey = Transformations.key(transformationChain());
+        Bitmap hit = memoryCache.peek(url, targetWidth, targetHeight, config, transformationKey);
+        if (hit != null) {
+            events.onMemoryCacheHit(url);
+            engine.markDisplayed(imageView, hit);
+            if (loadImage != null)
+                engine.markExposed(hit);
+            imageView.setImageBitmap(hit);
+            if (loadImage != null)
+                loadImage.onSuccess(hit);
+            started.end(true);
+            completed(imageView, url);
+            return;
+        }
+        events.onMemoryCacheMiss(url);
+        if (transformationKey != null) {
+            // Transformed variants are produced by the pipeline, which reads the orientation
+            // from the disk-cache metadata.
+            queuePhoto(url, imageView, targetWidth, targetHeight, started);
+            return;
+        }
+        Future<?> promotion = engine.getDiskExecutor().submit(() -> {
+            Bitmap bitmap = memoryCache.promote(url, targetWidth, targetHeight, config, null).join();
+            if (bitmap != null) {
+                events.onDiskCacheHit(url);
+                if (!CacheControl.isFresh(fileCache.getMetadata(url), System.currentTimeMillis())) {
+                    // Only served when stale-while-revalidate is on.
+                    revalidate(url);
                 }
             }
-            final Bitmap finalBitmap = bitmap;
             handler.post(() -> {
-                if (finalBitmap != null && !finalBitmap.isRecycled()) {
-                    imageView.setImageBitmap(finalBitmap);
+                if (!url.equals(imageView.getTag())) {
+                    // Rebound meanwhile; the view belongs to its new request.
+                    started.cancel();
+                    return;
+                }
+                if (bitmap != null && !bitmap.isRecycled()) {
+                    engine.markDisplayed(imageView, bitmap);
+                    if (loadImage != null)
+                        engine.markExposed(bitmap);
+                    imageView.setImageBitmap(bitmap);
                     imageView.invalidate();
                     if (loadImage != null)
-                        loadImage.onSuccess(finalBitmap);
+                        loadImage.onSuccess(bitmap);
+                    started.end(true);
+                    completed(imageView, url);
                 } else {
-                    imageViews.put(new WeakReference<>(imageView), urlPath);
-                    queuePhoto(urlPath, imageView);
+                    queuePhoto(url, imageView, targetWidth, targetHeight, started);
                 }
             });
-        });
-        return this;
+        }, priority);
+        imageView.setTag(R.id.fresco_request, promotion);
+    }
+
+    private void completed(ImageView imageView, String key) {
+        if (requestManager != null && imageView != null) {
+            requestManager.complete(imageView, key);
+        }
     }
 
-    private int getRotationDegree(Rotation rotation, String path) {
+    /**
+     * The requested {@link Rotation} followed by the {@link #transform(Transformation...)} steps.
+     */
+    private List<Transformation> transformationChain() {
+        List<Transformation> chain = new ArrayList<>();
         switch (rotation) {
             case ROTATE_90:
-                return 90;
             case ROTATE_180:
-                return 180;
             case ROTATE_270:
-                return 270;
+                chain.add(Transformations.rotate(rotation.getValue()));
+                break;
+            case FLIP_HORIZONTAL:
+                chain.add(Transformations.flipHorizontal());
+                break;
+            case FLIP_VERTICAL:
+                chain.add(Transformations.flipVertical());
+                break;
             case AUTO:
-                try {
-                    if (path == null) {
-                        Log.e("Fresco", "getRotationDegree: path is null");
-                        return 0;
-                    }
-                    ExifInterface exifInterface = new ExifInterface(path);
-                    int orientation = exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
-                    switch (orientation) {
-                        case ExifInterface.ORIENTATION_ROTATE_90:
-                            return 90;
-                        case ExifInterface.ORIENTATION_ROTATE_180:
-                            return 180;
-                        case ExifInterface.ORIENTATION_ROTATE_270:
-                            return 270;
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-                return 0;
+                chain.add(Transformations.autoOrient());
+                break;
             default:
-                return 0;
+                break;
         }
+        chain.addAll(transformations);
+        return chain;
     }
+
+    /**
+     * Detaches {@code imageView} from the load it is waiting on, if any, and reports its request
+     * as cancelled unless it already ended. The shared load is dequeued when no other target
+     * still needs it, and a disk promotion that has not started is dropped.
+     */
+    public static void cancelRequest(ImageView imageView) {
+        Object started = imageView.getTag(R.id.fresco_started);
+        if (started instanceof StartedRequest) {
+            ((StartedRequest) started).cancel();
+            imageView.setTag(R.id.fresco_started, null);
+        }
+        detach(imageView);
+    }
+
+    private static void detach(ImageView imageView) {
+        Object previous = imageView.getTag(R.id.fresco_request);
+        if (previous instanceof InFlightRequests.Waiter) {
+            ((InFlightRequests<?>.Waiter) previous).cancel();
+            imageView.setTag(R.id.fresco_request, null);
+        } else if (previous instanceof Future) {
+            ((Future<?>) previous).cancel(false);
+            imageView.setTag(R.id.fresco_request, null);
+        }
+    }
+
 /*
 
     private void rotateImage(ImageView imageView, String path, Rotation rotation) {
@@ -242,22 +402,6 @@ public class Fresco {
     }
 */
 
-    private Bitmap rotateImage(Bitmap bitmap, int rotation) {
-        if (bitmap == null || bitmap.isRecycled()) return null;
-        try {
-            Matrix matrix = new Matrix();
-            matrix.postRotate(rotation);
-            Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-            if (rotated == bitmap) {
-                Log.e("Fresco", "Rotation failed - same bitmap returned");
-            }
-            return rotated;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return bitmap;
-        }
-    }
-
     public Bitmap decode() {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
@@ -265,13 +409,23 @@ public class Fresco {
 
         options.inSampleSize = calculateInSampleSize(options, width, height);
         options.inJustDecodeBounds = false;
-        options.inMutable = true;
-        options.inPreferredConfig = Bitmap.Config.RGB_565;
-        options.inBitmap = Bitmap.createBitmap(options.outWidth, options.outHeight, Bitmap.Config.RGB_565);
+        // Without an explicit config, opaque images are decoded at half the size.
+        options.inPreferredConfig = DecodeConfigs.resolve(configSet ? config : Bitmap.Config.RGB_565, options.outMimeType);
 
-        return BitmapFactory.decodeFile(urlPath, options);
+        final String path = urlPath;
+        try {
+            return FileUtils.decode(options, engine.getBitmapPool(), o -> BitmapFactory.decodeFile(path, o));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
+    /**
+     * Sets the target size as {@code "WIDTHxHEIGHT"}. Either side may be {@code "?"} to follow
+     * the aspect ratio of the image; the decode then sizes by the other side alone, so nothing
+     * is read from the image here.
+     */
     public Fresco size(@NonNull String size) {
         if (!size.contains("x")) {
             return null;
@@ -280,26 +434,16 @@ public class Fresco {
         if (sizes.length != 2) {
             return null;
         }
-
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(urlPath, options);
-        int originalWidth = options.outWidth;
-        int originalHeight = options.outHeight;
-
-        if (originalWidth <= 0 || originalHeight <= 0) {
-            return null;
-        }
         if (sizes[0].equals("?") && sizes[1].equals("?")) {
             throw new IllegalArgumentException("You must specify either the width or the height");
         }
 
         if (sizes[0].equals("?")) {
+            width = 0;
             height = Integer.parseInt(sizes[1]);
-            width = (int) ((height / (float) originalHeight) * originalWidth);
         } else if (sizes[1].equals("?")) {
             width = Integer.parseInt(sizes[0]);
-            height = (int) ((width / (float) originalWidth) * originalHeight);
+            height = 0;
         } else {
             width = Integer.parseInt(sizes[0]);
             height = Integer.parseInt(sizes[1]);
@@ -313,8 +457,28 @@ public class Fresco {
     }
 
     public void queuePhoto(String url, ImageView imageView) {
+        queuePhoto(url, imageView, 0, 0);
+    }
+
+    public void queuePhoto(String url, ImageView imageView, int targetWidth, int targetHeight) {
+        cancelRequest(imageView);
+        queuePhoto(url, imageView, targetWidth, targetHeight, start(url, imageView));
+    }
+
+    private void queuePhoto(String url, ImageView imageView, int targetWidth, int targetHeight, StartedRequest started) {
         PhotoToLoad photoToLoad = new PhotoToLoad(url, imageView);
-        executor.submit(new PhotoLoader(photoToLoad));
+        photoToLoad.started = started;
+        photoToLoad.width = targetWidth;
+        photoToLoad.height = targetHeight;
+        photoToLoad.config = config;
+        photoToLoad.transformations = transformationChain();
+        photoToLoad.transformationKey = Transformations.key(photoToLoad.transformations);
+        String key = CacheKey.sized(CacheKey.of(url), targetWidth, targetHeight, config, photoToLoad.transformationKey);
+        detach(imageView);
+        imageViews.put(imageView, url);
+        InFlightRequests<Bitmap>.Waiter waiter = inFlightRequests.load(key, priority, new PhotoLoader(photoToLoad),
+                bitmap -> new Displacer(bitmap, photoToLoad).run());
+        imageView.setTag(R.id.fresco_request, waiter);
     }
 
     private void cancelLoadingTask(Uri uri) {
@@ -340,20 +504,46 @@ public class Fresco {
         } catch (Exception e) {
             Log.d("loadFileThumbnail", e.toString());
         }
+        if (requestManager != null) {
+            if (requestManager.isDestroyed()) {
+                return this;
+            }
+            requestManager.track(imageView, uri.toString(), () -> cancelLoadingTask(uri),
+                    () -> loadFileThumbnail(uri, imageView, loadImage, fileType));
+            if (requestManager.isPaused()) {
+                return this;
+            }
+        }
 
-        Future<?> loadingTask = executor.submit(() -> {
-            File file = fileCache.getFile(uri.getPath());
-            Bitmap thumbnail = (Bitmap) memoryCache.get(uri.getPath())[0];
+        Future<?> loadingTask = engine.getDiskExecutor().submit(() -> {
+            String key = thumbnailKey(uri, fileType);
+            Bitmap thumbnail = memoryCache.peek(key, 0, 0, null, null);
 
             if (thumbnail != null) {
                 Log.d("loadFileThumbnail", "Thumbnail found in memory cache for URI: " + uri);
-                handler.post(() -> imageView.setImageBitmap(thumbnail));
             } else {
                 Log.d("loadFileThumbnail", "Thumbnail not found in memory cache for URI: " + uri);
-                imageViews.put(new WeakReference<>(imageView), uri.getPath());
-                queuePhoto(uri.getPath(), imageView);
+                thumbnail = getFileThumbnail(uri, fileType);
+                if (thumbnail != null) {
+                    memoryCache.put(key, thumbnail);
+                }
             }
-        });
+            Bitmap result = thumbnail;
+            handler.post(() -> {
+                loadingTasks.remove(uri);
+                completed(imageView, uri.toString());
+                if (result != null) {
+                    engine.markDisplayed(imageView, result);
+                    if (loadImage != null)
+                        engine.markExposed(result);
+                    imageView.setImageBitmap(result);
+                    if (loadImage != null)
+                        loadImage.onSuccess(result);
+                } else if (loadImage != null) {
+                    loadImage.onFail();
+                }
+            });
+        }, priority);
         loadingTasks.put(uri, loadingTask);
         return this;
     }
@@ -366,236 +556,524 @@ public class Fresco {
         return null;
     }
 
+    /**
+     * Thumbnail store key for {@code uri}. Local files include their modification time, so an
+     * edited file does not keep showing its old thumbnail.
+     */
+    private String thumbnailKey(Uri uri, FileType fileType) {
+        String key = fileType + ":" + uri;
+        if (!"content".equals(uri.getScheme()) && uri.getPath() != null) {
+            key += "@" + new File(uri.getPath()).lastModified();
+        }
+        return key;
+    }
+
     private Bitmap getImageThumbnail(Uri uri) {
         return getImageThumbnail(uri, 25);
     }
 
+    /**
+     * Decodes {@code uri} sampled down to about {@code scalePercent} percent of its size, capped
+     * to the thumbnail slot size, and keeps the result in the {@link ThumbnailStore}. On P and
+     * later the image is opened once, with {@link ImageDecoder}, which also applies the EXIF
+     * orientation.
+     */
     private Bitmap getImageThumbnail(Uri uri, float scalePercent) {
-        File file = new File(uri.getPath());
-        Bitmap thumbnail;
-        InputStream inputStream = null;
-        OutputStream outputStream = null;
-
+        ThumbnailStore thumbnailStore = engine.getThumbnailStore();
+        String key = thumbnailKey(uri, FileType.IMAGE);
+        Bitmap stored = thumbnailStore.get(key);
+        if (stored != null)
+            return stored;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            Bitmap thumbnail = decodeThumbnail(uri, scalePercent, thumbnailStore.getSlotSize());
+            if (thumbnail == null) return null;
+            Bitmap result = thumbnailStore.put(key, thumbnail);
+            if (result != thumbnail) {
+                fileUtils.getBitmapPool().put(thumbnail);
+            }
+            return result;
+        }
         try {
-            Bitmap _image = fileUtils.decodeFile(file);
-            if (_image != null)
-                return _image;
-
-            if ("content".equals(uri.getScheme())) {
-                inputStream = context.getContentResolver().openInputStream(uri);
-            } else if ("file".equals(uri.getScheme()) || uri.getScheme() == null) {
-                // Handle both "file" scheme and URIs with no scheme (file paths)
-                if (file.exists()) {
-                    inputStream = Files.newInputStream(file.toPath());
-                } else {
-                    Log.e("getFileThumbnail", "File does not exist: " + uri.getPath());
-                    return null;
-                }
-            } else {
-                Log.e("getFileThumbnail", "Unsupported URI scheme: " + uri.getScheme());
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream inputStream = openThumbnailStream(uri)) {
+                if (inputStream == null) return null;
+                BitmapFactory.decodeStream(inputStream, null, options);
+            }
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                Log.e("getFileThumbnail", "Failed to decode bounds for URI: " + uri);
                 return null;
             }
-            if (inputStream != null) {
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inJustDecodeBounds = true;
-                BitmapFactory.decodeStream(inputStream, null, options);
-                int width = options.outWidth;
-                int height = options.outHeight;
-                int targetWidth = (int) (width * scalePercent);
-                int targetHeight = (int) (height * scalePercent);
-                // Calculate inSampleSize
-                options.inSampleSize = calculateInSampleSize(options, targetWidth, targetHeight);
-                inputStream.close();
-                inputStream = context.getContentResolver().openInputStream(uri);
-                options.inJustDecodeBounds = false;
-                thumbnail = BitmapFactory.decodeStream(inputStream, null, options);
-                if (thumbnail != null) {
-                    InputStream is = bitmapToInputStream(thumbnail);
-                    outputStream = Files.newOutputStream(file.toPath());
-                    fileUtils.copyStream(is, outputStream);
-                    is.close();
-                    outputStream.close();
-                    if (targetWidth < 100 && targetHeight < 100)
-                        return scaleBitmap(thumbnail, scalePercent);
-                } else {
-                    Log.e("getFileThumbnail", "Failed to decode bitmap from input stream for URI: " + uri);
+            int slotSize = thumbnailStore.getSlotSize();
+            int targetWidth = Math.min(slotSize, Math.max(1, (int) (options.outWidth * scalePercent / 100f)));
+            int targetHeight = Math.min(slotSize, Math.max(1, (int) (options.outHeight * scalePercent / 100f)));
+            options.inSampleSize = calculateInSampleSize(options, targetWidth, targetHeight);
+            options.inJustDecodeBounds = false;
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            Bitmap thumbnail = FileUtils.decode(options, fileUtils.getBitmapPool(), o -> {
+                try (InputStream stream = openThumbnailStream(uri)) {
+                    return stream != null ? BitmapFactory.decodeStream(stream, null, o) : null;
                 }
-            } else {
-                Log.e("getFileThumbnail", "Input stream is null for URI: " + uri);
+            });
+            if (thumbnail == null) {
+                Log.e("getFileThumbnail", "Failed to decode bitmap from input stream for URI: " + uri);
+                return null;
             }
+            Bitmap result = thumbnailStore.put(key, thumbnail);
+            if (result != thumbnail) {
+                fileUtils.getBitmapPool().put(thumbnail);
+            }
+            return result;
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            try {
-                if (inputStream != null) {
-                    inputStream.close();
-                }
-                if (outputStream != null) {
-                    outputStream.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
-        return fileUtils.decodeFile(file);
+        return null;
     }
 
-    private Bitmap scaleBitmap(Bitmap bitmap, float scalePercent) {
-        if (bitmap == null) return null;
-
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        // Calculate the scaled width and height
-        int targetWidth = (int) (width * scalePercent);
-        int targetHeight = (int) (height * scalePercent);
-
-        Matrix matrix = new Matrix();
-        matrix.postScale(scalePercent, scalePercent);
-
-        return Bitmap.createBitmap(bitmap, 0, 0, targetWidth, targetHeight, matrix, true);
+    /**
+     * One-pass thumbnail decode: the sample size is chosen from the header while the decoder
+     * is already open on the source.
+     */
+    private Bitmap decodeThumbnail(Uri uri, float scalePercent, int slotSize) {
+        ImageDecoder.Source source;
+        if ("content".equals(uri.getScheme())) {
+            source = ImageDecoder.createSource(context.getContentResolver(), uri);
+        } else if ("file".equals(uri.getScheme()) || uri.getScheme() == null) {
+            source = ImageDecoder.createSource(new File(uri.getPath()));
+        } else {
+            Log.e("getFileThumbnail", "Unsupported URI scheme: " + uri.getScheme());
+            return null;
+        }
+        try {
+            return ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+                int width = info.getSize().getWidth();
+                int height = info.getSize().getHeight();
+                int targetWidth = Math.min(slotSize, Math.max(1, (int) (width * scalePercent / 100f)));
+                int targetHeight = Math.min(slotSize, Math.max(1, (int) (height * scalePercent / 100f)));
+                decoder.setTargetSampleSize(FileUtils.calculateInSampleSize(width, height, targetWidth, targetHeight));
+                // Thumbnails are stored and redrawn as software RGB_565, like the fallback path.
+                decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+                decoder.setMemorySizePolicy(ImageDecoder.MEMORY_POLICY_LOW_RAM);
+            });
+        } catch (IOException | RuntimeException e) {
+            Log.e("getFileThumbnail", "Failed to decode bitmap for URI: " + uri, e);
+            return null;
+        }
     }
 
-
-    private int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
-
-        if (height > reqHeight || width > reqWidth) {
-            final int halfHeight = height / 2;
-            final int halfWidth = width / 2;
-            while ((halfHeight / inSampleSize) >= reqHeight
-                    && (halfWidth / inSampleSize) >= reqWidth) {
-                inSampleSize *= 2;
+    private InputStream openThumbnailStream(Uri uri) throws IOException {
+        if ("content".equals(uri.getScheme())) {
+            return context.getContentResolver().openInputStream(uri);
+        } else if ("file".equals(uri.getScheme()) || uri.getScheme() == null) {
+            // Handle both "file" scheme and URIs with no scheme (file paths)
+            File file = new File(uri.getPath());
+            if (file.exists()) {
+                return Files.newInputStream(file.toPath());
             }
+            Log.e("getFileThumbnail", "File does not exist: " + uri.getPath());
+            return null;
         }
-
-        return inSampleSize;
+        Log.e("getFileThumbnail", "Unsupported URI scheme: " + uri.getScheme());
+        return null;
     }
 
-    private InputStream bitmapToInputStream(Bitmap bitmap) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
-        byte[] bitmapArray = outputStream.toByteArray();
-        return new ByteArrayInputStream(bitmapArray);
+    private int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        return FileUtils.calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
     }
 
     public Bitmap getVideoThumbnail(Uri videoUri) {
-        File file = fileCache.getFile(videoUri.getPath());
-        Bitmap thumbnail;
-        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        try {
-            retriever.setDataSource(context, videoUri);
-
-            Bitmap _image = fileUtils.decodeFile(file);
-            if (_image != null)
-                return _image;
-            String ms = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-            if (!StringUtils.isEmpty(ms)) {
-                thumbnail = retriever.getFrameAtTime(Integer.parseInt(ms) < 5000000 ? 0 : 5000000);
-            } else {
-                thumbnail = retriever.getFrameAtTime(5000000);
-            }
-            InputStream is;
-            if (thumbnail != null) {
-                is = bitmapToInputStream(thumbnail);
-                OutputStream os = Files.newOutputStream(file.toPath());
-                fileUtils.copyStream(is, os);
-                is.close();
-                os.close();
-            } else {
-                return null;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                retriever.release();
-            } catch (RuntimeException | IOException e) {
-                e.printStackTrace();
-            }
+        ThumbnailStore thumbnailStore = engine.getThumbnailStore();
+        String key = thumbnailKey(videoUri, FileType.VIDEO);
+        Bitmap stored = thumbnailStore.get(key);
+        if (stored != null)
+            return stored;
+
+        VideoFrames videoFrames = engine.getVideoFrames();
+        // Five seconds in, past any fade-in, unless the video is shorter than that.
+        long timeUs = videoFrames.getDurationUs(videoUri) > 5000000 ? 5000000 : 0;
+        int slotSize = thumbnailStore.getSlotSize();
+        Bitmap thumbnail = videoFrames.getFrame(videoUri, timeUs, slotSize, slotSize);
+        if (thumbnail == null)
+            return null;
+        Bitmap result = thumbnailStore.put(key, thumbnail);
+        if (result != thumbnail) {
+            fileUtils.getBitmapPool().put(thumbnail);
         }
-        return fileUtils.decodeFile(file);
+        return result;
     }
 
-    private Bitmap getBitmap(String url) {
-        File file = fileCache.getFile(url);
-        if (file.exists() && file.length() > 0) {
-            Bitmap _image = fileUtils.decodeFile(file);
-            if (_image != null) {
-                return _image;
-            }
+    /**
+     * Returns {@code frameCount} frames spread over the video as one strip, each fitted into a
+     * {@code frameWidth} x {@code frameHeight} cell from left to right. The strip is extracted
+     * in one pass and cached as a single entry, in memory and on disk. The caller may keep it:
+     * it is never reused for another decode.
+     * <p>
+     * Unless the strip is already in memory, this reads the disk cache or the video itself on
+     * the calling thread, so call it off the main thread.
+     */
+    public Bitmap getVideoStrip(Uri videoUri, int frameCount, int frameWidth, int frameHeight) {
+        String key = thumbnailKey(videoUri, FileType.VIDEO) + "#strip:" + frameCount + ":" + frameWidth + "x" + frameHeight;
+        Bitmap cached = memoryCache.getIfPresent(key, 0, 0, null);
+        if (cached != null)
+            return cached;
+        Bitmap strip = engine.getVideoFrames().getStrip(key, videoUri, frameCount, frameWidth, frameHeight);
+        if (strip != null) {
+            engine.markExposed(strip);
+            memoryCache.put(key, strip);
         }
-        File tempFile = new File(file.getAbsolutePath() + ".tmp");
+        return strip;
+    }
+
+    /**
+     * Fetches {@code url} into the disk cache. When a cached copy carries validators the request
+     * is conditional, and a 304 only refreshes the stored freshness before returning that copy.
+     * <p>
+     * With a {@code target}, the body is decoded for it while being written to disk, and the
+     * bitmap is left in {@code decoded[0]} once the file has been committed. It stays
+     * {@code null} if the streaming decode was not possible, so the caller decodes the file.
+     * <p>
+     * A download cut off midway is kept as a partial with its validators, and the next call
+     * asks for the rest with {@code Range} and {@code If-Range}. A resumed body is not decoded
+     * while streaming, since its start is already on disk.
+     */
+    private File download(String url, PhotoToLoad target, Bitmap[] decoded) {
+        ResumableDownload download = new ResumableDownload(fileCache, url);
+        File tempFile = download.getTempFile();
+        Map<String, String> cachedMetadata = fileCache.getMetadata(url);
+        Map<String, String> headers = new HashMap<>(params);
+        boolean conditional = !download.addHeaders(headers) && fileCache.contains(url) && CacheControl.canRevalidate(cachedMetadata);
+        if (conditional) {
+            CacheControl.addConditionalHeaders(cachedMetadata, headers);
+        }
+        Bitmap streamed = null;
+        ImageHeader[] header = new ImageHeader[1];
+        Map<String, String> metadata = new HashMap<>();
+        long start = System.nanoTime();
+        int code = -1;
         try {
-            Bitmap _webImage;
-            URL imageURL = new URL(url);
-            HttpURLConnection connection = (HttpURLConnection) imageURL.openConnection();
-            if (!params.isEmpty()) {
-                for (Map.Entry<String, String> entry : params.entrySet()) {
-                    connection.setRequestProperty(entry.getKey(), entry.getValue());
+            long expectedLength = -1;
+            long written = 0;
+            boolean restart = false;
+            try (Fetcher.Response response = engine.getFetcher().fetch(url, headers)) {
+                long now = System.currentTimeMillis();
+                code = response.getCode();
+                if (conditional && code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    events.onFetchEnd(url, code, 0, System.nanoTime() - start);
+                    download.abort();
+                    CacheControl.update(cachedMetadata, response, now, engine.getDefaultMaxAge());
+                    fileCache.putMetadata(url, cachedMetadata);
+                    engine.getNegativeCache().recordSuccess(url, hostOf(url));
+                    return fileCache.get(url);
                 }
-            }
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-            connection.setInstanceFollowRedirects(true);
-            connection.setRequestProperty("Accept-Encoding", "identity");
-            InputStream is = new BufferedInputStream(connection.getInputStream());
-            OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile));
-            fileUtils.copyStream(is, os);
-            /*}*/
-            os.flush();
-            os.close();
-            is.close();
-            connection.disconnect();
-            if (tempFile.length() > 0) {
-                if (!tempFile.renameTo(file)) {
-                    tempFile.delete();
+                if (download.mismatched(response)) {
+                    // The partial no longer lines up with the body; start over.
+                    restart = true;
+                } else if (!download.accepts(response)) {
+                    // An error page, or a status without an image body; never cache it.
+                    events.onFetchFailed(url, new IOException("HTTP " + code));
+                    download.abort();
+                    failed(url, failureOf(code));
                     return null;
+                } else {
+                    CacheControl.update(metadata, response, now, engine.getDefaultMaxAge());
+                    expectedLength = download.expectedLength(response);
+                    if (target != null && decoded != null && !download.appends(response)) {
+                        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+                            TeeInputStream tee = new TeeInputStream(response.getBody(), os);
+                            streamed = fileUtils.decodeStream(tee, target.width, target.height, target.decodeConfig(), header);
+                            tee.drain();
+                        }
+                        written = tempFile.length();
+                    } else {
+                        written = download.write(response);
+                    }
+                }
+            }
+            if (restart) {
+                download.abort();
+                return download(url, target, decoded);
+            }
+            events.onFetchEnd(url, code, written, System.nanoTime() - start);
+            File file = null;
+            if (expectedLength <= 0 || tempFile.length() == expectedLength) {
+                // The header goes in with the entry, so no later load reads the bounds again.
+                ImageHeader info = header[0] != null ? header[0].withOrientationOf(tempFile) : ImageHeader.read(tempFile);
+                if (info != null) {
+                    info.writeTo(metadata);
                 }
+                file = fileCache.commit(url, tempFile, metadata);
+                engine.getNegativeCache().recordSuccess(url, hostOf(url));
             } else {
-                tempFile.delete();
-                return null;
+                download.keep(metadata);
+                failed(url, NegativeCache.Failure.TRANSIENT);
             }
-            _webImage = fileUtils.decodeFile(file);
-            return _webImage;
-        } catch (OutOfMemoryError outOfMemoryError) {
-            /*if (connectionErrors != null)
-                connectionErrors.OutOfMemory(memoryCache);
-            else*/
-            memoryCache.clear();
-            return null;
+            if (streamed != null) {
+                if (file != null) {
+                    decoded[0] = streamed;
+                } else {
+                    fileUtils.getBitmapPool().put(streamed);
+                }
+            }
+            return file;
         } catch (FileNotFoundException fileNotFoundException) {
             /*if (connectionErrors != null)
                 connectionErrors.FileNotFound(url);*/
+            events.onFetchFailed(url, fileNotFoundException);
+            download.abort();
+            failed(url, failureOf(code));
             return null;
         } catch (Exception e) {
-            tempFile.delete();
+            events.onFetchFailed(url, e);
+            download.keep(metadata);
+            failed(url, failureOf(code));
+            if (streamed != null) {
+                fileUtils.getBitmapPool().put(streamed);
+            }
             /*if (connectionErrors != null)
                 connectionErrors.NormalError();*/
             return null;
         }
     }
 
+    private void downloadAndComplete(String url) {
+        downloadAndComplete(url, null, null);
+    }
+
+    /**
+     * Performs the download joined first with {@link InFlightRequests#joinDownload(String, Consumer)}
+     * and hands the result to everyone waiting on it, even if the download throws.
+     */
+    private void downloadAndComplete(String url, PhotoToLoad target, Bitmap[] decoded) {
+        File file = null;
+        try {
+            file = download(url, target, decoded);
+        } finally {
+            inFlightRequests.completeDownload(url, file);
+        }
+    }
+
+    /**
+     * Whether {@code url} is not to be fetched now, because it failed recently or its host is
+     * backing off.
+     */
+    private boolean skipFetch(String url) {
+        if (bypassNegativeCache || engine.getNegativeCache().check(url, hostOf(url), System.currentTimeMillis()) == null) {
+            return false;
+        }
+        events.onFetchSkipped(url);
+        return true;
+    }
+
+    /**
+     * Refreshes a stale entry in the background while the stale copy is being shown. If the
+     * server sends a new body, decoded copies of the old one are dropped from memory.
+     */
+    private void revalidate(String url) {
+        if (skipFetch(url)) return;
+        submitFetch(url, Priority.BACKGROUND, () -> {
+            File cached = fileCache.getFile(url);
+            long before = cached.lastModified();
+            if (inFlightRequests.joinDownload(url, file -> {
+                if (file != null && file.lastModified() != before) {
+                    memoryCache.remove(url);
+                }
+            })) {
+                downloadAndComplete(url);
+            }
+        });
+    }
+
+    private void failed(String url, NegativeCache.Failure failure) {
+        engine.getNegativeCache().recordFailure(url, hostOf(url), failure, System.currentTimeMillis());
+    }
+
+    /**
+     * Client errors other than timeouts and rate limiting will not pass by retrying; anything
+     * else, including failures before a response, may.
+     */
+    private static NegativeCache.Failure failureOf(int code) {
+        if (code >= 400 && code < 500 && code != HttpURLConnection.HTTP_CLIENT_TIMEOUT && code != HTTP_TOO_MANY_REQUESTS) {
+            return NegativeCache.Failure.NOT_FOUND;
+        }
+        return NegativeCache.Failure.TRANSIENT;
+    }
+
+    /**
+     * Returns {@code null} when the file cannot be decoded. Running out of memory is not the
+     * file's fault, so the {@link OutOfMemoryError} is left to the caller.
+     */
+    private Bitmap decodeFile(File file, PhotoToLoad photoToLoad) {
+        long start = System.nanoTime();
+        ImageHeader header = ImageHeader.fromMetadata(fileCache.getMetadata(photoToLoad.url));
+        Bitmap bitmap = fileUtils.decodeFile(file, photoToLoad.width, photoToLoad.height, photoToLoad.decodeConfig(), header);
+        events.onDecodeEnd(photoToLoad.url, bitmap, System.nanoTime() - start);
+        return bitmap;
+    }
+
     public Bitmap getBitmap(byte[] bytes) {
-        Base64Utils.Base64Encoder encoder = new Base64Utils.Base64Encoder();
-        File file = fileCache.getFile(encoder.encrypt(Arrays.toString(bytes), Base64.NO_WRAP, null));
+        File file = fileCache.getFile(CacheKey.of(bytes));
         Bitmap _image = fileUtils.decodeFile(file);
         if (_image != null)
             return _image;
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        options.inJustDecodeBounds = false;
+        try {
+            return FileUtils.decode(options, fileUtils.getBitmapPool(), o -> BitmapFactory.decodeByteArray(bytes, 0, bytes.length, o));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
     boolean imageViewReused(PhotoToLoad _photoToLoad) {
-        String tag = imageViews.get(new WeakReference<>(_photoToLoad.imageView));
+        String tag = imageViews.get(_photoToLoad.imageView);
         return tag == null || !tag.equals(_photoToLoad.url);
     }
 
+    /**
+     * Opens {@code url}, a local path or a remote image fetched through the disk cache, for
+     * tiled display with {@link TiledImage#DEFAULT_TILE_SIZE} tiles. The preview fits the
+     * {@link #size(String)} if one was set.
+     */
+    public TiledImage loadTiled(String url, TiledImage.Callback callback) {
+        return loadTiled(url, TiledImage.DEFAULT_TILE_SIZE, callback);
+    }
+
+    public TiledImage loadTiled(String url, int tileSize, TiledImage.Callback callback) {
+        TiledImage image = new TiledImage(engine, url, tileSize, config, callback);
+        int previewSize = width > 0 || height > 0 ? Math.max(width, height) : TiledImage.DEFAULT_PREVIEW_SIZE;
+        engine.getDiskExecutor().submit(() -> {
+            File local = new File(url);
+            if (local.isFile()) {
+                engine.getDecodeExecutor().submit(() -> image.open(local, null, previewSize), priority);
+                return;
+            }
+            File file = fileCache.get(url);
+            if (file != null) {
+                ImageHeader header = headerOf(url, null);
+                engine.getDecodeExecutor().submit(() -> image.open(file, header, previewSize), priority);
+                return;
+            }
+            if (skipFetch(url)) {
+                image.open(null, null, previewSize);
+                return;
+            }
+            submitFetch(url, priority, () -> {
+                if (inFlightRequests.joinDownload(url, downloaded -> {
+                    ImageHeader header = headerOf(url, null);
+                    engine.getDecodeExecutor().submit(() -> image.open(downloaded, header, previewSize), priority);
+                })) {
+                    downloadAndComplete(url);
+                }
+            });
+        }, priority);
+        return image;
+    }
+
+    /**
+     * Downloads {@code urls} into the disk cache without decoding them. Entries that are already
+     * cached and fresh are skipped.
+     */
+    public Prefetch prefetchToDisk(String... urls) {
+        Prefetch batch = new Prefetch();
+        Priority prefetchPriority = prefetchPriority();
+        for (String url : urls) {
+            if (url == null) continue;
+            Future<?> future = submitFetch(url, prefetchPriority, () -> {
+                if (batch.isCancelled()) return;
+                if (fileCache.contains(url) && CacheControl.isFresh(fileCache.getMetadata(url), System.currentTimeMillis())) {
+                    return;
+                }
+                if (skipFetch(url)) return;
+                if (inFlightRequests.joinDownload(url, file -> {
+                })) {
+                    downloadAndComplete(url);
+                }
+            });
+            batch.add(() -> engine.getNetworkExecutor().dequeue(future));
+        }
+        return batch;
+    }
+
+    /**
+     * Loads {@code urls} into the memory cache decoded for a {@code width} x {@code height}
+     * target with the configured {@link #config(Bitmap.Config)}, going through the disk cache
+     * and network as needed. A later {@link #into(ImageView)} of the same size is a memory hit,
+     * or joins the prefetch if it is still running.
+     */
+    public Prefetch prefetch(int width, int height, String... urls) {
+        Prefetch batch = new Prefetch();
+        Priority prefetchPriority = prefetchPriority();
+        List<Transformation> chain = transformationChain();
+        String transformationKey = Transformations.key(chain);
+        for (String url : urls) {
+            if (url == null || memoryCache.peek(url, width, height, config, transformationKey) != null) continue;
+            PhotoToLoad photoToLoad = new PhotoToLoad(url);
+            photoToLoad.width = width;
+            photoToLoad.height = height;
+            photoToLoad.config = config;
+            photoToLoad.transformations = chain;
+            photoToLoad.transformationKey = transformationKey;
+            String key = CacheKey.sized(CacheKey.of(url), width, height, config, transformationKey);
+            InFlightRequests<Bitmap>.Waiter waiter = inFlightRequests.load(key, prefetchPriority, new PhotoLoader(photoToLoad), null);
+            batch.add(waiter::cancel);
+        }
+        return batch;
+    }
+
+    /**
+     * Queues network work for {@code url} on the network pool, within the engine's per-host and
+     * global connection limits.
+     */
+    private Future<?> submitFetch(String url, Priority priority, Runnable work) {
+        RequestScheduler network = engine.getNetworkExecutor();
+        return network.submit(engine.getDispatcher().limit(hostOf(url), priority, work, call -> network.submit(call, priority)), priority);
+    }
+
+    private static String hostOf(String url) {
+        return Uri.parse(url).getHost();
+    }
+
+    /**
+     * A prefetch never competes with on-screen loads: it runs at {@link Priority#PREFETCH}
+     * unless a lower priority was asked for.
+     */
+    private Priority prefetchPriority() {
+        return priority == Priority.VISIBLE ? Priority.PREFETCH : priority;
+    }
+
+    /**
+     * Header of the cached copy of {@code url}, from the entry metadata. Entries cached before
+     * headers were stored have it read from the file once and added.
+     */
+    private ImageHeader headerOf(String url, File file) {
+        ImageHeader header = ImageHeader.fromMetadata(fileCache.getMetadata(url));
+        if (header != null || file == null) return header;
+        header = ImageHeader.read(file);
+        if (header != null) {
+            Map<String, String> update = new HashMap<>();
+            header.writeTo(update);
+            fileCache.putMetadata(url, update);
+        }
+        return header;
+    }
+
+    /**
+     * EXIF orientation of the cached copy of {@code url}, kept in the entry metadata so
+     * transformations never parse EXIF again.
+     */
+    private int orientationOf(String url, File file) {
+        ImageHeader header = headerOf(url, file);
+        return header != null ? header.orientation : ExifInterface.ORIENTATION_NORMAL;
+    }
+
     public void clearCache() {
         memoryCache.clear();
         fileCache.clear();
-        executor.shutdown();
+        engine.getNegativeCache().clear();
     }
 
     public enum FileType {
@@ -608,6 +1086,12 @@ public class Fresco {
         public String url;
         public ImageView imageView;
         public byte[] bytes;
+        public int width;
+        public int height;
+        public Bitmap.Config config;
+        public List<Transformation> transformations = new ArrayList<>();
+        public String transformationKey;
+        StartedRequest started;
 
         public PhotoToLoad(String _url, ImageView _imageView) {
             url = _url;
@@ -622,30 +1106,164 @@ public class Fresco {
         public PhotoToLoad(String _url) {
             url = _url;
         }
+
+        /**
+         * The config to decode with: a transformation chain needs software pixels.
+         */
+        Bitmap.Config decodeConfig() {
+            return transformationKey != null ? DecodeConfigs.software(config) : config;
+        }
     }
 
-    class PhotoLoader implements Runnable {
+    /**
+     * Runs a load as a chain of stages on the engine's pools: disk-cache lookup, network fetch,
+     * then decode. Delivery is posted straight to the main thread by {@link Displacer}.
+     */
+    class PhotoLoader implements InFlightRequests.Loader<Bitmap> {
 
         PhotoToLoad photoToLoad;
-        private Bitmap bitmap;
 
         public PhotoLoader(PhotoToLoad photoToLoad) {
             this.photoToLoad = photoToLoad;
         }
 
         @Override
-        public void run() {
-            if (bitmap != null && !bitmap.isRecycled()) {
-                bitmap.recycle();
-                bitmap = null;
+        public void load(InFlightRequests<Bitmap>.Request request) {
+            request.stage(engine.getDiskExecutor(), () -> {
+                File file = fileCache.get(photoToLoad.url);
+                if (file == null || file.length() <= 0) {
+                    events.onDiskCacheMiss(photoToLoad.url);
+                    fetch(request);
+                    return;
+                }
+                events.onDiskCacheHit(photoToLoad.url);
+                boolean fresh = CacheControl.isFresh(fileCache.getMetadata(photoToLoad.url), System.currentTimeMillis());
+                if (fresh || engine.isStaleWhileRevalidate()) {
+                    if (!fresh) {
+                        revalidate(photoToLoad.url);
+                    }
+                    request.stage(engine.getDecodeExecutor(), () -> decode(request, file, true));
+                } else {
+                    fetch(request);
+                }
+            });
+        }
+
+        /**
+         * Downloads within the connection limits. A fetch that had to wait for a free slot is
+         * resubmitted outside the stage, so it stops by itself if nobody wants it any more.
+         */
+        private void fetch(InFlightRequests<Bitmap>.Request request) {
+            if (skipFetch(photoToLoad.url)) {
+                request.complete(null);
+                return;
+            }
+            RequestScheduler network = engine.getNetworkExecutor();
+            Runnable work = () -> {
+                if (request.stopIfCancelled()) return;
+                try {
+                    startDownload(request);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    request.complete(null);
+                }
+            };
+            request.stage(network, engine.getDispatcher().limit(hostOf(photoToLoad.url), request.getPriority(), work,
+                    call -> network.submit(call, request.getPriority())));
+        }
+
+        private void startDownload(InFlightRequests<Bitmap>.Request request) {
+            Bitmap[] decoded = new Bitmap[1];
+            Consumer<File> next = file -> {
+                if (file == null) {
+                    request.complete(null);
+                } else if (decoded[0] != null) {
+                    if (photoToLoad.transformationKey != null) {
+                        request.stage(engine.getDecodeExecutor(), () -> deliver(request, file, decoded[0]));
+                    } else {
+                        deliver(request, file, decoded[0]);
+                    }
+                } else {
+                    request.stage(engine.getDecodeExecutor(), () -> decode(request, file, false));
+                }
+            };
+            if (inFlightRequests.joinDownload(photoToLoad.url, next)) {
+                downloadAndComplete(photoToLoad.url, photoToLoad, decoded);
+            }
+        }
+
+        private void decode(InFlightRequests<Bitmap>.Request request, File file, boolean fromDisk) {
+            Bitmap bitmap;
+            try {
+                bitmap = decodeFile(file, photoToLoad);
+            } catch (OutOfMemoryError outOfMemoryError) {
+                // The file is fine; keep it and give up on this load only.
+                events.onOutOfMemory(photoToLoad.url);
+                memoryCache.clear();
+                request.complete(null);
+                return;
+            }
+            if (bitmap == null && fromDisk && file.exists()) {
+                // The cached copy is unreadable; drop it and fetch it again.
+                fileCache.clear(photoToLoad.url);
+                fetch(request);
+                return;
+            }
+            if (bitmap == null && !fromDisk && ImageHeader.fromMetadata(fileCache.getMetadata(photoToLoad.url)) == null) {
+                // No header could be read when it was downloaded: the body is not an image.
+                failed(photoToLoad.url, NegativeCache.Failure.DECODE);
+            }
+            deliver(request, file, bitmap);
+        }
+
+        /**
+         * Applies the transformation chain, caches the result under the chain's key and hands it
+         * to the waiters. Intermediate bitmaps go back to the pool.
+         */
+        private void deliver(InFlightRequests<Bitmap>.Request request, File file, Bitmap bitmap) {
+            if (bitmap != null && photoToLoad.transformationKey != null) {
+                int orientation = orientationOf(photoToLoad.url, file);
+                for (Transformation transformation : photoToLoad.transformations) {
+                    Bitmap transformed = transformation.transform(bitmap, orientation);
+                    if (transformed != bitmap) {
+                        engine.getBitmapPool().put(bitmap);
+                    }
+                    bitmap = transformed;
+                    if (bitmap == null) break;
+                }
             }
-            bitmap = getBitmap(photoToLoad.url);
             if (bitmap != null) {
-                memoryCache.put(photoToLoad.url, bitmap);
+                memoryCache.put(photoToLoad.url, photoToLoad.width, photoToLoad.height, photoToLoad.config, photoToLoad.transformationKey, bitmap);
             }
+            request.complete(bitmap);
+        }
+    }
+
+    /**
+     * A request that reported {@link EventListener#onRequestStart(String)}. Whichever of
+     * {@link #end(boolean)} and {@link #cancel()} comes first is reported; the other is ignored.
+     */
+    static class StartedRequest {
 
-            Displacer displacer = new Displacer(bitmap, photoToLoad);
-            executor.execute(displacer);
+        private final String url;
+        private final EventListener events;
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        StartedRequest(String url, EventListener events) {
+            this.url = url;
+            this.events = events;
+        }
+
+        void end(boolean success) {
+            if (ended.compareAndSet(false, true)) {
+                events.onRequestEnd(url, success);
+            }
+        }
+
+        void cancel() {
+            if (ended.compareAndSet(false, true)) {
+                events.onRequestCancelled(url);
+            }
         }
     }
 
@@ -662,10 +1280,16 @@ public class Fresco {
 
         @Override
         public void run() {
+            if (photoToLoad.started != null) {
+                photoToLoad.started.end(bitmap != null);
+            }
             handler.post(() -> {
+                completed(photoToLoad.imageView, photoToLoad.url);
                 if (bitmap != null && photoToLoad.imageView != null) {
-                    if (photoToLoad.url.equals(photoToLoad.imageView.getTag())) {
+                    if (!imageViewReused(photoToLoad) && photoToLoad.url.equals(photoToLoad.imageView.getTag())) {
+                        engine.markDisplayed(photoToLoad.imageView, bitmap);
                         if (loadImage != null) {
+                            engine.markExposed(bitmap);
                             loadImage.onSuccess(bitmap);
                         }
                         photoToLoad.imageView.setImageBitmap(bitmap);
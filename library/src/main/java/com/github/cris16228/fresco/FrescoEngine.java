@@ -0,0 +1,559 @@
+package com.github.cris16228.fresco;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import androidx.lifecycle.LifecycleOwner;
+
+import com.github.cris16228.fresco.interfaces.EventListener;
+import com.github.cris16228.fresco.interfaces.Fetcher;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide state shared by every {@link Fresco} request: worker threads, caches, the
+ * in-flight table and the network fetcher. Configure it once with {@link #initialize(Builder)}
+ * before the first {@link Fresco#with(Context)} call, otherwise defaults are used.
+ */
+public class FrescoEngine {
+
+    private static volatile FrescoEngine instance;
+
+    private final Context context;
+    private final MemoryCache memoryCache;
+    private final FileCache fileCache;
+    private final FileUtils fileUtils;
+    private final BitmapPool bitmapPool;
+    private final ThumbnailStore thumbnailStore;
+    private final VideoFrames videoFrames;
+    private final RequestScheduler diskExecutor;
+    private final RequestScheduler networkExecutor;
+    private final RequestScheduler decodeExecutor;
+    private final Handler handler;
+    private final Fetcher fetcher;
+    private final HostDispatcher dispatcher;
+    private final NegativeCache negativeCache;
+    private final boolean staleWhileRevalidate;
+    private final long defaultMaxAge;
+    private final Bitmap.Config defaultConfig;
+    private final InFlightRequests<Bitmap> inFlightRequests = new InFlightRequests<>();
+    private final Metrics metrics = new Metrics();
+    private final EventListener eventListener;
+    private final Map<ImageView, String> imageViews = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Map<ImageView, Bitmap> displayed = new WeakHashMap<>();
+    private final Map<LifecycleOwner, RequestManager> requestManagers = new WeakHashMap<>();
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            // The cache first: what it evicts lands in the pool, which is trimmed after it.
+            memoryCache.trimMemory(level);
+            bitmapPool.trimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            memoryCache.clear();
+            bitmapPool.clear();
+            videoFrames.clear();
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration configuration) {
+        }
+    };
+
+    private FrescoEngine(Builder builder) {
+        context = builder.context;
+        bitmapPool = new BitmapPool(builder.bitmapPoolSize > 0 ? builder.bitmapPoolSize : MemoryCache.defaultLimit(context) / 2);
+        memoryCache = builder.memoryCacheSize > 0 ? new MemoryCache(context, builder.memoryCacheSize) : new MemoryCache(context);
+        memoryCache.setBitmapPool(bitmapPool);
+        memoryCache.setOnEvictedListener(bitmap -> {
+            if (!isInUse(bitmap)) {
+                bitmapPool.put(bitmap);
+            }
+        });
+        thumbnailStore = new ThumbnailStore(new File(context.getCacheDir(), "fresco_thumbnails"), builder.thumbnailSize, builder.thumbnailSlots, Bitmap.Config.RGB_565);
+        thumbnailStore.setBitmapPool(bitmapPool);
+        fileCache = new FileCache(new File(context.getCacheDir(), "fresco"), builder.diskCacheSize - builder.thumbnailStoreSize(), builder.diskCacheMaxEntries);
+        memoryCache.setFileCache(fileCache);
+        fileUtils = new FileUtils(bitmapPool);
+        videoFrames = new VideoFrames(context, fileCache, bitmapPool, builder.videoRetrievers);
+        diskExecutor = new RequestScheduler(builder.diskThreads, metrics.getDiskQueueWait());
+        networkExecutor = new RequestScheduler(builder.networkThreads, metrics.getNetworkQueueWait());
+        decodeExecutor = new RequestScheduler(builder.decodeThreads, metrics.getDecodeQueueWait());
+        handler = new Handler(Looper.getMainLooper());
+        fetcher = builder.fetcher != null ? builder.fetcher : new HttpUrlFetcher(builder.connectTimeout, builder.readTimeout);
+        dispatcher = new HostDispatcher(builder.maxRequests, builder.maxRequestsPerHost);
+        negativeCache = builder.negativeCache != null ? builder.negativeCache : new NegativeCache();
+        staleWhileRevalidate = builder.staleWhileRevalidate;
+        memoryCache.setStaleWhileRevalidate(staleWhileRevalidate);
+        defaultMaxAge = builder.defaultMaxAge;
+        defaultConfig = builder.defaultConfig;
+        eventListener = builder.eventListener != null ? new CompositeEventListener(metrics, builder.eventListener) : metrics;
+        inFlightRequests.setCancellationListener(eventListener::onCancelled);
+        context.registerComponentCallbacks(memoryCallbacks);
+    }
+
+    public static FrescoEngine get(Context context) {
+        if (instance == null) {
+            synchronized (FrescoEngine.class) {
+                if (instance == null) {
+                    instance = new Builder(context).build();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public static synchronized FrescoEngine initialize(Builder builder) {
+        if (instance != null) {
+            throw new IllegalStateException("FrescoEngine is already initialized");
+        }
+        instance = builder.build();
+        return instance;
+    }
+
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.context.unregisterComponentCallbacks(instance.memoryCallbacks);
+            instance.videoFrames.clear();
+            instance.resumeRequests();
+            instance.diskExecutor.shutdown();
+            instance.networkExecutor.shutdown();
+            instance.decodeExecutor.shutdown();
+            instance.fileCache.close();
+            instance.thumbnailStore.close();
+            instance = null;
+        }
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public MemoryCache getMemoryCache() {
+        return memoryCache;
+    }
+
+    public FileCache getFileCache() {
+        return fileCache;
+    }
+
+    public FileUtils getFileUtils() {
+        return fileUtils;
+    }
+
+    public BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    public ThumbnailStore getThumbnailStore() {
+        return thumbnailStore;
+    }
+
+    public VideoFrames getVideoFrames() {
+        return videoFrames;
+    }
+
+    /**
+     * Records the bitmap an ImageView is about to show. Bitmaps still shown by some view are
+     * not handed to the pool when the memory cache evicts them. Call it on the main thread, once
+     * the view is known to still want the bitmap.
+     */
+    public void markDisplayed(ImageView imageView, Bitmap bitmap) {
+        synchronized (displayed) {
+            displayed.put(imageView, bitmap);
+        }
+    }
+
+    /**
+     * Records a bitmap handed to caller code, which may keep it indefinitely, so it is never
+     * reused for another decode.
+     */
+    public void markExposed(Bitmap bitmap) {
+        memoryCache.markExposed(bitmap);
+    }
+
+    boolean isInUse(Bitmap bitmap) {
+        if (memoryCache.isExposed(bitmap)) return true;
+        synchronized (displayed) {
+            return displayed.containsValue(bitmap);
+        }
+    }
+
+    /**
+     * Memory-cache misses and disk-cache lookups. Short I/O-bound work, kept apart from network
+     * fetches so cached images never queue behind slow downloads.
+     */
+    public RequestScheduler getDiskExecutor() {
+        return diskExecutor;
+    }
+
+    public RequestScheduler getNetworkExecutor() {
+        return networkExecutor;
+    }
+
+    /**
+     * Decodes and transforms. CPU-bound, sized to the number of cores.
+     */
+    public RequestScheduler getDecodeExecutor() {
+        return decodeExecutor;
+    }
+
+    /**
+     * Holds back disk reads and decodes until {@link #resumeRequests()}, e.g. while a list is
+     * flinging, so they do not compete with drawing. Downloads keep going and land in the disk
+     * cache; requests keep queueing and run in priority order once resumed.
+     */
+    public void pauseRequests() {
+        diskExecutor.pause();
+        decodeExecutor.pause();
+    }
+
+    public void resumeRequests() {
+        diskExecutor.resume();
+        decodeExecutor.resume();
+    }
+
+    public boolean isPaused() {
+        return decodeExecutor.isPaused();
+    }
+
+    /**
+     * Returns the manager of the requests bound to {@code owner}, creating it on first use. Must
+     * be called on the main thread.
+     */
+    public RequestManager getRequestManager(LifecycleOwner owner) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("Requests can only be bound to a lifecycle on the main thread");
+        }
+        RequestManager manager = requestManagers.get(owner);
+        if (manager == null) {
+            manager = new RequestManager(this, owner);
+            if (!manager.isDestroyed()) {
+                requestManagers.put(owner, manager);
+            }
+        }
+        return manager;
+    }
+
+    void removeRequestManager(LifecycleOwner owner) {
+        requestManagers.remove(owner);
+    }
+
+    public Handler getHandler() {
+        return handler;
+    }
+
+    public Fetcher getFetcher() {
+        return fetcher;
+    }
+
+    /**
+     * Connection limits that every fetch of the network pool runs within.
+     */
+    public HostDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Recent fetch failures. URLs in it, and hosts backing off, are not fetched again until
+     * their time is up, unless a request calls {@link Fresco#skipNegativeCache()}.
+     */
+    public NegativeCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * When set, a stale disk entry is shown right away and revalidated in the background
+     * instead of blocking the load on a conditional request.
+     */
+    public boolean isStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * Freshness lifetime, in milliseconds, for responses without Cache-Control or Expires.
+     */
+    public long getDefaultMaxAge() {
+        return defaultMaxAge;
+    }
+
+    /**
+     * Config requests decode with unless they set one; see {@link Builder#defaultConfig(Bitmap.Config)}.
+     */
+    public Bitmap.Config getDefaultConfig() {
+        return defaultConfig;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Counters and latencies so far, together with the current cache and pool sizes.
+     */
+    public Metrics.Snapshot getMetricsSnapshot() {
+        Metrics.Snapshot snapshot = metrics.snapshot();
+        snapshot.memoryCacheSize = memoryCache.getSize();
+        snapshot.memoryCacheLimit = memoryCache.getLimit();
+        snapshot.bitmapPoolSize = bitmapPool.getSize();
+        snapshot.bitmapPoolCount = bitmapPool.getCount();
+        snapshot.diskCacheSize = fileCache.length();
+        snapshot.diskCacheEntries = fileCache.size();
+        snapshot.inFlight = inFlightRequests.size();
+        snapshot.fetchesRunning = dispatcher.runningCount();
+        snapshot.fetchesParked = dispatcher.parkedCount();
+        return snapshot;
+    }
+
+    /**
+     * Receives the events of every request: the engine's {@link Metrics} and the listener set
+     * with {@link Builder#eventListener(EventListener)}.
+     */
+    public EventListener getEventListener() {
+        return eventListener;
+    }
+
+    public InFlightRequests<Bitmap> getInFlightRequests() {
+        return inFlightRequests;
+    }
+
+    public Map<ImageView, String> getImageViews() {
+        return imageViews;
+    }
+
+    public static class Builder {
+
+        private final Context context;
+        private int diskThreads = 2;
+        private int networkThreads = 4;
+        private int decodeThreads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        private long memoryCacheSize;
+        private long bitmapPoolSize;
+        private long diskCacheSize = FileCache.DEFAULT_MAX_SIZE;
+        private int diskCacheMaxEntries = FileCache.DEFAULT_MAX_ENTRIES;
+        private int thumbnailSize = ThumbnailStore.DEFAULT_SLOT_SIZE;
+        private int thumbnailSlots = ThumbnailStore.DEFAULT_SLOT_COUNT;
+        private int videoRetrievers = VideoFrames.DEFAULT_MAX_RETRIEVERS;
+        private Fetcher fetcher;
+        private int maxRequests = HostDispatcher.DEFAULT_MAX_REQUESTS;
+        private int maxRequestsPerHost = HostDispatcher.DEFAULT_MAX_REQUESTS_PER_HOST;
+        private int connectTimeout = HttpUrlFetcher.DEFAULT_TIMEOUT;
+        private int readTimeout = HttpUrlFetcher.DEFAULT_TIMEOUT;
+        private NegativeCache negativeCache;
+        private EventListener eventListener;
+        private boolean staleWhileRevalidate;
+        private long defaultMaxAge = TimeUnit.DAYS.toMillis(1);
+        private Bitmap.Config defaultConfig = Bitmap.Config.ARGB_8888;
+
+        public Builder(Context context) {
+            this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        }
+
+        public Builder diskThreads(int diskThreads) {
+            if (diskThreads <= 0) {
+                throw new IllegalArgumentException("diskThreads must be positive");
+            }
+            this.diskThreads = diskThreads;
+            return this;
+        }
+
+        public Builder networkThreads(int networkThreads) {
+            if (networkThreads <= 0) {
+                throw new IllegalArgumentException("networkThreads must be positive");
+            }
+            this.networkThreads = networkThreads;
+            return this;
+        }
+
+        public Builder decodeThreads(int decodeThreads) {
+            if (decodeThreads <= 0) {
+                throw new IllegalArgumentException("decodeThreads must be positive");
+            }
+            this.decodeThreads = decodeThreads;
+            return this;
+        }
+
+        public Builder memoryCacheSize(long bytes) {
+            this.memoryCacheSize = bytes;
+            return this;
+        }
+
+        public Builder bitmapPoolSize(long bytes) {
+            this.bitmapPoolSize = bytes;
+            return this;
+        }
+
+        /**
+         * Disk budget for downloaded images and the thumbnail store together. The store's file
+         * is allocated up front, so the downloads get what it leaves.
+         */
+        public Builder diskCacheSize(long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("diskCacheSize must be positive");
+            }
+            this.diskCacheSize = bytes;
+            return this;
+        }
+
+        public Builder diskCacheMaxEntries(int maxEntries) {
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("diskCacheMaxEntries must be positive");
+            }
+            this.diskCacheMaxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Largest width and height of a local thumbnail; bigger ones are scaled down to fit.
+         */
+        public Builder thumbnailSize(int pixels) {
+            if (pixels <= 0) {
+                throw new IllegalArgumentException("thumbnailSize must be positive");
+            }
+            this.thumbnailSize = pixels;
+            return this;
+        }
+
+        /**
+         * How many local thumbnails the store holds. Each slot takes
+         * {@code thumbnailSize * thumbnailSize * 2} bytes of disk, counted against
+         * {@link #diskCacheSize(long)}.
+         */
+        public Builder thumbnailSlots(int slots) {
+            if (slots <= 0) {
+                throw new IllegalArgumentException("thumbnailSlots must be positive");
+            }
+            this.thumbnailSlots = slots;
+            return this;
+        }
+
+        /**
+         * How many videos keep an open MediaMetadataRetriever between frame requests.
+         */
+        public Builder videoRetrievers(int retrievers) {
+            if (retrievers < 0) {
+                throw new IllegalArgumentException("videoRetrievers must not be negative");
+            }
+            this.videoRetrievers = retrievers;
+            return this;
+        }
+
+        /**
+         * HTTP stack for downloads, instead of {@link HttpUrlFetcher}. The timeouts below do
+         * not apply to it.
+         */
+        public Builder fetcher(Fetcher fetcher) {
+            this.fetcher = fetcher;
+            return this;
+        }
+
+        /**
+         * Most fetches running at once, whatever the host. The network threads are a bound too.
+         */
+        public Builder maxRequests(int maxRequests) {
+            if (maxRequests <= 0) {
+                throw new IllegalArgumentException("maxRequests must be positive");
+            }
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * Most fetches running at once against one host. Further ones wait without holding a
+         * network thread, so other hosts keep loading.
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            if (maxRequestsPerHost <= 0) {
+                throw new IllegalArgumentException("maxRequestsPerHost must be positive");
+            }
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * Connect timeout of the default fetcher, 0 for none.
+         */
+        public Builder connectTimeout(int millis) {
+            if (millis < 0) {
+                throw new IllegalArgumentException("connectTimeout must not be negative");
+            }
+            this.connectTimeout = millis;
+            return this;
+        }
+
+        /**
+         * Read timeout of the default fetcher, 0 for none.
+         */
+        public Builder readTimeout(int millis) {
+            if (millis < 0) {
+                throw new IllegalArgumentException("readTimeout must not be negative");
+            }
+            this.readTimeout = millis;
+            return this;
+        }
+
+        /**
+         * Failure TTLs and host backoff, instead of the {@link NegativeCache} defaults. Set every
+         * TTL to 0 and the backoff to 0 to turn it off.
+         */
+        public Builder negativeCache(NegativeCache negativeCache) {
+            this.negativeCache = negativeCache;
+            return this;
+        }
+
+        public Builder eventListener(EventListener eventListener) {
+            this.eventListener = eventListener;
+            return this;
+        }
+
+        public Builder staleWhileRevalidate(boolean staleWhileRevalidate) {
+            this.staleWhileRevalidate = staleWhileRevalidate;
+            return this;
+        }
+
+        public Builder defaultMaxAge(long millis) {
+            if (millis < 0) {
+                throw new IllegalArgumentException("defaultMaxAge must not be negative");
+            }
+            this.defaultMaxAge = millis;
+            return this;
+        }
+
+        /**
+         * Config for requests that do not call {@link Fresco#config(Bitmap.Config)}.
+         * {@code HARDWARE} keeps the pixels of displayed images out of the Java heap and falls
+         * back to {@code ARGB_8888} for transformed images; {@code RGB_565} is used for JPEGs
+         * only. Hardware bitmaps cannot be drawn by views with a software layer.
+         */
+        public Builder defaultConfig(Bitmap.Config config) {
+            if (config == null) {
+                throw new IllegalArgumentException("config must not be null");
+            }
+            this.defaultConfig = config;
+            return this;
+        }
+
+        public FrescoEngine build() {
+            ThumbnailStore.checkGeometry(thumbnailSize, thumbnailSlots, Bitmap.Config.RGB_565);
+            if (thumbnailStoreSize() >= diskCacheSize) {
+                throw new IllegalArgumentException("diskCacheSize must be larger than the " + thumbnailStoreSize() + " bytes of the thumbnail store");
+            }
+            return new FrescoEngine(this);
+        }
+
+        private long thumbnailStoreSize() {
+            return ThumbnailStore.sizeOf(thumbnailSize, thumbnailSlots, Bitmap.Config.RGB_565);
+        }
+    }
+}
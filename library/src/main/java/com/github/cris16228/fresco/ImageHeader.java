@@ -0,0 +1,106 @@
+package com.github.cris16228.fresco;
+
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Size, format and EXIF orientation of an encoded image. It is read once when the image enters
+ * the disk cache and stored in the entry metadata, so later decodes size and sample the image
+ * without a bounds pass over the file.
+ */
+final class ImageHeader {
+
+    static final String WIDTH = "width";
+    static final String HEIGHT = "height";
+    static final String MIME_TYPE = "mime";
+
+    final int width;
+    final int height;
+    final String mimeType;
+    final int orientation;
+
+    ImageHeader(int width, int height, String mimeType, int orientation) {
+        this.width = width;
+        this.height = height;
+        this.mimeType = mimeType;
+        this.orientation = orientation;
+    }
+
+    /**
+     * Reads the bounds and the EXIF orientation of {@code file}, or returns {@code null} if it
+     * is not a decodable image.
+     */
+    static ImageHeader read(File file) {
+        ImageHeader bounds = bounds(file);
+        return bounds != null ? bounds.withOrientationOf(file) : null;
+    }
+
+    /**
+     * Reads the bounds of {@code file} only; the orientation is left undefined.
+     */
+    static ImageHeader bounds(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        return of(options);
+    }
+
+    /**
+     * The header found by a bounds pass with {@code options}, or {@code null} if it failed.
+     */
+    static ImageHeader of(BitmapFactory.Options options) {
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+        return new ImageHeader(options.outWidth, options.outHeight, options.outMimeType, ExifInterface.ORIENTATION_UNDEFINED);
+    }
+
+    /**
+     * The header stored by {@link #writeTo(Map)}, or {@code null} if the entry predates it.
+     */
+    static ImageHeader fromMetadata(Map<String, String> metadata) {
+        String width = metadata.get(WIDTH);
+        String height = metadata.get(HEIGHT);
+        String orientation = metadata.get(Transformations.ORIENTATION);
+        if (width == null || height == null || orientation == null) return null;
+        try {
+            return new ImageHeader(Integer.parseInt(width), Integer.parseInt(height), metadata.get(MIME_TYPE),
+                    Integer.parseInt(orientation));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A copy with the orientation read from {@code file}. Only formats that carry EXIF are
+     * parsed; the others are upright.
+     */
+    ImageHeader withOrientationOf(File file) {
+        int exifOrientation = hasExif(mimeType) ? Transformations.readOrientation(file) : ExifInterface.ORIENTATION_NORMAL;
+        return new ImageHeader(width, height, mimeType, exifOrientation);
+    }
+
+    void writeTo(Map<String, String> metadata) {
+        metadata.put(WIDTH, String.valueOf(width));
+        metadata.put(HEIGHT, String.valueOf(height));
+        if (mimeType != null) {
+            metadata.put(MIME_TYPE, mimeType);
+        }
+        metadata.put(Transformations.ORIENTATION, String.valueOf(orientation));
+    }
+
+    /**
+     * Fills {@code options} as a bounds pass would have.
+     */
+    void applyTo(BitmapFactory.Options options) {
+        options.outWidth = width;
+        options.outHeight = height;
+        options.outMimeType = mimeType;
+    }
+
+    private static boolean hasExif(String mimeType) {
+        return mimeType == null || "image/jpeg".equals(mimeType) || "image/webp".equals(mimeType)
+                || "image/heif".equals(mimeType) || "image/heic".equals(mimeType);
+    }
+}
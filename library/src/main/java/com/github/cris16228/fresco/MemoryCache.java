@@ -1,128 +1,348 @@
 package com.github.cris16228.fresco;
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.util.Base64;
-import android.util.Log;
 import android.util.LruCache;
 
+import androidx.annotation.WorkerThread;
+
 import java.io.File;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.nio.file.Files;
-import java.util.Arrays;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 public class MemoryCache {
 
     /*private final Map<String, Bitmap> cache = Collections.synchronizedMap(new LinkedHashMap<>(10, 1.5f, true));*/
     private final LruCache<String, Bitmap> cache;
     private final Context context;
-    private long size = 0;
-    private long limit = 1000000;
-    private final String path;
+    private BitmapPool bitmapPool;
+    private FileCache fileCache;
+    private volatile boolean staleWhileRevalidate;
+    private final ConcurrentHashMap<String, CompletableFuture<Bitmap>> promotions = new ConcurrentHashMap<>();
+    private final Set<Bitmap> exposed = Collections.newSetFromMap(new WeakHashMap<>());
+    private volatile OnEvictedListener onEvictedListener;
+
+    public interface OnEvictedListener {
+        void onEvicted(Bitmap bitmap);
+    }
 
     public MemoryCache(Context context) {
+        this(context, defaultLimit(context));
+    }
+
+    /**
+     * @param limit budget in bytes of all cached bitmaps together
+     */
+    public MemoryCache(Context context, long limit) {
         this.context = context;
-        this.path = context.getCacheDir() + "/fresco";
-        setLimit(Runtime.getRuntime().maxMemory() / 4);
-        this.cache = new LruCache<String, Bitmap>((int) limit) {
+        this.cache = new LruCache<String, Bitmap>(toCacheSize(limit)) {
             @Override
             protected int sizeOf(String key, Bitmap value) {
-                return value.getByteCount() / 1024;
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                OnEvictedListener listener = onEvictedListener;
+                if (listener != null && oldValue != newValue) {
+                    listener.onEvicted(oldValue);
+                }
             }
         };
     }
 
-    public Object[] getBitmap(byte[] bytes) {
-        Base64Utils.Base64Encoder encoder = new Base64Utils.Base64Encoder();
-        String key = encoder.encrypt(Arrays.toString(bytes), Base64.NO_WRAP, null);
-        return get(key);
+    /**
+     * A sixth of the heap the app is given, honouring {@code android:largeHeap}, or an eighth on
+     * low-RAM devices.
+     */
+    public static long defaultLimit(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return Runtime.getRuntime().maxMemory() / 6;
+        }
+        boolean largeHeap = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_LARGE_HEAP) != 0;
+        int memoryClass = largeHeap ? activityManager.getLargeMemoryClass() : activityManager.getMemoryClass();
+        long heap = Math.min((long) memoryClass * 1024 * 1024, Runtime.getRuntime().maxMemory());
+        return heap / (activityManager.isLowRamDevice() ? 8 : 6);
     }
 
-    public void setLimit(long _limit) {
-        limit = _limit;
+    @WorkerThread
+    public Object[] getBlocking(byte[] bytes) {
+        return getBlocking(CacheKey.of(bytes));
     }
 
-    public synchronized Object[] get(String id) {
-        if (StringUtils.isEmpty(path) || id == null) return null;
-        try {
-            String encodedId = URLEncoder.encode(id, "UTF-8");
-            String cacheKey = new File(path, encodedId).getAbsolutePath();
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+    }
+
+    /**
+     * The disk cache promotions read from. Its entry metadata holds image headers, so disk
+     * promotions skip the bounds pass.
+     */
+    public void setFileCache(FileCache fileCache) {
+        this.fileCache = fileCache;
+    }
+
+    /**
+     * When set, stale disk entries are promoted too and it is up to the caller to revalidate
+     * them; otherwise they are left for the pipeline to fetch again.
+     */
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    public void setOnEvictedListener(OnEvictedListener onEvictedListener) {
+        this.onEvictedListener = onEvictedListener;
+    }
+
+    /**
+     * Records a bitmap handed to caller code, which may keep it indefinitely, so it is never
+     * reused for another decode. Every bitmap this class returns is marked.
+     */
+    public void markExposed(Bitmap bitmap) {
+        if (bitmap == null) return;
+        synchronized (exposed) {
+            exposed.add(bitmap);
+        }
+    }
+
+    public boolean isExposed(Bitmap bitmap) {
+        synchronized (exposed) {
+            return exposed.contains(bitmap);
+        }
+    }
+
+    public void setLimit(long limit) {
+        cache.resize(toCacheSize(limit));
+    }
+
+    public long getLimit() {
+        return cache.maxSize();
+    }
+
+    /**
+     * Bytes currently held by cached bitmaps.
+     */
+    public long getSize() {
+        return cache.size();
+    }
+
+    /**
+     * Gives memory back in steps as the system asks for it: a quarter of the cache while the
+     * app runs low, half once it is critical or hidden, and everything once it is in the
+     * background list.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.trimToSize(cache.maxSize() / 2);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() * 3 / 4);
+        }
+    }
+
+    private static int toCacheSize(long limit) {
+        return (int) Math.max(1, Math.min(limit, Integer.MAX_VALUE));
+    }
 
-            Bitmap cached = cache.get(cacheKey);
-            if (cached != null && !cached.isRecycled()) {
-                return new Object[]{cached, cacheKey};
+    @WorkerThread
+    public Object[] getBlocking(String id) {
+        return getBlocking(id, 0, 0, null);
+    }
+
+    /**
+     * Memory-only lookup. Never touches the disk, so it is safe on the main thread.
+     */
+    public Bitmap getIfPresent(String id, int width, int height, Bitmap.Config config) {
+        return getIfPresent(id, width, height, config, null);
+    }
+
+    /**
+     * Memory-only lookup of the variant produced by the transformation chain with key
+     * {@code transformation}.
+     */
+    public Bitmap getIfPresent(String id, int width, int height, Bitmap.Config config, String transformation) {
+        Bitmap cached = peek(id, width, height, config, transformation);
+        markExposed(cached);
+        return cached;
+    }
+
+    /**
+     * {@link #getIfPresent(String, int, int, Bitmap.Config, String)} for the loader itself, which
+     * tracks the bitmaps it shows and so leaves them poolable.
+     */
+    Bitmap peek(String id, int width, int height, Bitmap.Config config, String transformation) {
+        if (id == null) return null;
+        Bitmap cached = cache.get(CacheKey.sized(CacheKey.of(id), width, height, config, transformation));
+        return cached != null && !cached.isRecycled() ? cached : null;
+    }
+
+    /**
+     * Looks {@code id} up in memory and, on a miss, decodes the disk copy on the calling thread.
+     * The decode runs without holding any lock; a thread asking for a key that is already being
+     * promoted waits for that decode instead of starting another one. Blocks on disk I/O, so
+     * never call it on the main thread; use
+     * {@link #getIfPresent(String, int, int, Bitmap.Config)} there.
+     */
+    @WorkerThread
+    public Object[] getBlocking(String id, int width, int height, Bitmap.Config config) {
+        if (fileCache == null || id == null) return null;
+        String filePath = fileCache.getFile(id).getAbsolutePath();
+        Bitmap cached = cache.get(CacheKey.sized(CacheKey.of(id), width, height, config));
+        if (cached != null && !cached.isRecycled()) {
+            markExposed(cached);
+            return new Object[]{cached, filePath};
+        }
+        Bitmap bitmap = promote(id, width, height, config, null).join();
+        markExposed(bitmap);
+        return bitmap != null ? new Object[]{bitmap, filePath} : null;
+    }
+
+    /**
+     * Decodes the disk copy of {@code id} on {@code executor} and adds it to memory, unless it
+     * is already there. Concurrent promotions of the same key share one decode. The returned
+     * future completes with {@code null} when there is nothing on disk, or only a stale copy
+     * that may not be served. Like
+     * {@link #peek(String, int, int, Bitmap.Config, String)}, the bitmap is not marked exposed.
+     */
+    CompletableFuture<Bitmap> promote(String id, int width, int height, Bitmap.Config config, Executor executor) {
+        if (fileCache == null || id == null) return CompletableFuture.completedFuture(null);
+        String name = CacheKey.of(id);
+        String cacheKey = CacheKey.sized(name, width, height, config);
+        Bitmap cached = cache.get(cacheKey);
+        if (cached != null && !cached.isRecycled()) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Bitmap> promotion = new CompletableFuture<>();
+        CompletableFuture<Bitmap> running = promotions.putIfAbsent(cacheKey, promotion);
+        if (running != null) {
+            return running;
+        }
+        Runnable decode = () -> {
+            Bitmap bitmap = null;
+            try {
+                bitmap = decodeFromDisk(id, cacheKey, width, height, config);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            } finally {
+                promotions.remove(cacheKey, promotion);
+                promotion.complete(bitmap);
             }
+        };
+        if (executor != null) {
+            executor.execute(decode);
+        } else {
+            decode.run();
+        }
+        return promotion;
+    }
 
-            File cachedFile = new File(path, encodedId);
-            if (cachedFile.exists() && cachedFile.length() > 0) {
-                Bitmap bitmap = BitmapFactory.decodeFile(cachedFile.getAbsolutePath());
-                if (bitmap != null) {
-                    cache.put(cacheKey, bitmap);
-                    return new Object[]{bitmap, cachedFile.getAbsolutePath()};
-                }
+    private Bitmap decodeFromDisk(String id, String cacheKey, int width, int height, Bitmap.Config config) {
+        File cachedFile = fileCache.get(id);
+        if (cachedFile != null && cachedFile.length() > 0) {
+            Map<String, String> metadata = fileCache.getMetadata(id);
+            if (!staleWhileRevalidate && !CacheControl.isFresh(metadata, System.currentTimeMillis())) {
+                return null;
+            }
+            ImageHeader header = ImageHeader.fromMetadata(metadata);
+            Bitmap bitmap = FileUtils.decodeSampledFile(cachedFile.getAbsolutePath(), width, height, config, bitmapPool, header);
+            if (bitmap != null) {
+                cache.put(cacheKey, bitmap);
+                return bitmap;
             }
-        } catch (UnsupportedEncodingException e) {
-            Log.e("MemoryCache", "Error encoding URL", e);
         }
         return null;
     }
 
-    private Bitmap decodeSampleFromFile(String path, int reqWidth, int reqHeight) {
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(path, options);
+    public void put(String id, int width, int height, Bitmap.Config config, Bitmap bitmap) {
+        put(id, width, height, config, null, bitmap);
+    }
 
-        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
-        options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFile(path, options);
+    public void put(String id, int width, int height, Bitmap.Config config, String transformation, Bitmap bitmap) {
+        if (id == null || bitmap == null) return;
+        String name = CacheKey.of(id);
+        String key = CacheKey.sized(name, width, height, config, transformation);
+        if (key.equals(name)) {
+            put(id, bitmap);
+            return;
+        }
+        cache.put(key, bitmap);
     }
 
-    private int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        int height = options.outHeight;
-        int width = options.outWidth;
-        int inSampleSize = 1;
-        if (height > reqHeight || width > reqWidth) {
-            int halfHeight = height / 2;
-            int halfWidth = width / 2;
+    /**
+     * Memory-only lookup of a tile of {@code id}; see {@link CacheKey#tile(String, int, int, int, int)}.
+     */
+    public Bitmap getTile(String id, int tileSize, int sampleSize, int column, int row) {
+        if (id == null) return null;
+        Bitmap cached = cache.get(CacheKey.tile(CacheKey.of(id), tileSize, sampleSize, column, row));
+        if (cached == null || cached.isRecycled()) return null;
+        markExposed(cached);
+        return cached;
+    }
 
-            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
-                inSampleSize *= 2;
+    public void putTile(String id, int tileSize, int sampleSize, int column, int row, Bitmap bitmap) {
+        if (id == null || bitmap == null) return;
+        cache.put(CacheKey.tile(CacheKey.of(id), tileSize, sampleSize, column, row), bitmap);
+    }
+
+    /**
+     * Drops every decoded copy of {@code id}, whatever size it was decoded at.
+     */
+    public void remove(String id) {
+        if (id == null) return;
+        String name = CacheKey.of(id);
+        for (String key : cache.snapshot().keySet()) {
+            if (key.startsWith(name)) {
+                cache.remove(key);
             }
         }
-        return inSampleSize;
     }
 
-    public synchronized void put(String id, Bitmap bitmap, boolean isLocal, boolean saveInCache) {
+    public void put(String id, Bitmap bitmap, boolean isLocal, boolean saveInCache) {
         if (id == null || bitmap == null) return;
 
         try {
-            String encodedId = URLEncoder.encode(id, "UTF-8");
-            String cacheKey = new File(path, encodedId).getAbsolutePath();
+            String cacheKey = CacheKey.of(id);
             cache.put(cacheKey, bitmap);
-            if (isLocal) {
-                File file = new File(path, encodedId);
-                if (bitmap.getByteCount() > 0) {
-                    if (!file.exists()) {
-                        file.getParentFile().mkdirs();
-                        bitmap.compress(Bitmap.CompressFormat.PNG, 100, Files.newOutputStream(file.toPath()));
-                    }
-                } else {
-                    Log.e("MemoryCache", "Bitmap is null");
-                }
+            if (isLocal && fileCache != null && !fileCache.contains(id)) {
+                persist(id, bitmap);
             }
-
-            if (cache.get(cacheKey) != null)
-                size -= sizeInBytes(cache.get(cacheKey));
-            cache.put(cacheKey, bitmap);
-            size += sizeInBytes(bitmap);
         } catch (Throwable ex) {
             ex.printStackTrace();
         }
     }
 
-    public synchronized void put(String id, Bitmap bitmap) {
+    /**
+     * Keeps a full-size copy of a local bitmap in the disk cache, so it can be promoted again
+     * after it is evicted from memory.
+     */
+    private void persist(String id, Bitmap bitmap) throws IOException {
+        File tempFile = fileCache.newTempFile(id);
+        boolean written;
+        try (OutputStream os = new FileOutputStream(tempFile)) {
+            written = bitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
+        }
+        if (written) {
+            fileCache.commit(id, tempFile);
+        } else {
+            fileCache.abort(tempFile);
+        }
+    }
+
+    public void put(String id, Bitmap bitmap) {
         put(id, bitmap, false, true);
     }
 
@@ -134,21 +354,14 @@ public class MemoryCache {
     }
 
     public String getPath() {
-        return path;
+        return fileCache != null ? fileCache.getCacheDir().getAbsolutePath() : null;
     }
 
     public void clear() {
         try {
             cache.evictAll();
-            size = 0;
         } catch (NullPointerException ex) {
             ex.printStackTrace();
         }
     }
-
-    private long sizeInBytes(Bitmap bitmap) {
-        if (bitmap == null)
-            return 0;
-        return bitmap.getByteCount();
-    }
 }
@@ -0,0 +1,234 @@
+package com.github.cris16228.fresco;
+
+import android.graphics.Bitmap;
+
+import com.github.cris16228.fresco.interfaces.EventListener;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide counters and latency histograms, fed by the events of every request. Updates
+ * are lock-free; {@link #snapshot()} copies the current values for reporting.
+ */
+public class Metrics implements EventListener {
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong memoryMisses = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong diskMisses = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong fetchFailures = new AtomicLong();
+    private final AtomicLong fetchesSkipped = new AtomicLong();
+    private final AtomicLong fetchedBytes = new AtomicLong();
+    private final AtomicLong decodes = new AtomicLong();
+    private final AtomicLong decodeFailures = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private final AtomicLong outOfMemory = new AtomicLong();
+    private final AtomicLong cancellations = new AtomicLong();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong cancelledRequests = new AtomicLong();
+    private final Histogram fetchTime = new Histogram();
+    private final Histogram decodeTime = new Histogram();
+    private final Histogram diskQueueWait = new Histogram();
+    private final Histogram networkQueueWait = new Histogram();
+    private final Histogram decodeQueueWait = new Histogram();
+
+    @Override
+    public void onRequestStart(String url) {
+        requests.incrementAndGet();
+    }
+
+    @Override
+    public void onMemoryCacheHit(String url) {
+        memoryHits.incrementAndGet();
+    }
+
+    @Override
+    public void onMemoryCacheMiss(String url) {
+        memoryMisses.incrementAndGet();
+    }
+
+    @Override
+    public void onDiskCacheHit(String url) {
+        diskHits.incrementAndGet();
+    }
+
+    @Override
+    public void onDiskCacheMiss(String url) {
+        diskMisses.incrementAndGet();
+    }
+
+    @Override
+    public void onFetchEnd(String url, int code, long bytes, long durationNanos) {
+        fetches.incrementAndGet();
+        if (code == 304) {
+            notModified.incrementAndGet();
+        }
+        fetchedBytes.addAndGet(bytes);
+        fetchTime.record(durationNanos);
+    }
+
+    @Override
+    public void onFetchFailed(String url, Exception error) {
+        fetchFailures.incrementAndGet();
+    }
+
+    @Override
+    public void onFetchSkipped(String url) {
+        fetchesSkipped.incrementAndGet();
+    }
+
+    @Override
+    public void onDecodeEnd(String url, Bitmap bitmap, long durationNanos) {
+        if (bitmap == null) {
+            decodeFailures.incrementAndGet();
+            return;
+        }
+        decodes.incrementAndGet();
+        decodedBytes.addAndGet(bitmap.getAllocationByteCount());
+        decodeTime.record(durationNanos);
+    }
+
+    @Override
+    public void onOutOfMemory(String url) {
+        outOfMemory.incrementAndGet();
+    }
+
+    @Override
+    public void onCancelled(String key) {
+        cancellations.incrementAndGet();
+    }
+
+    @Override
+    public void onRequestEnd(String url, boolean success) {
+        (success ? successes : failures).incrementAndGet();
+    }
+
+    @Override
+    public void onRequestCancelled(String url) {
+        cancelledRequests.incrementAndGet();
+    }
+
+    Histogram getDiskQueueWait() {
+        return diskQueueWait;
+    }
+
+    Histogram getNetworkQueueWait() {
+        return networkQueueWait;
+    }
+
+    Histogram getDecodeQueueWait() {
+        return decodeQueueWait;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public void reset() {
+        for (AtomicLong counter : new AtomicLong[]{requests, memoryHits, memoryMisses, diskHits, diskMisses, fetches,
+                notModified, fetchFailures, fetchesSkipped, fetchedBytes, decodes, decodeFailures, decodedBytes, outOfMemory,
+                cancellations, successes, failures, cancelledRequests}) {
+            counter.set(0);
+        }
+        for (Histogram histogram : new Histogram[]{fetchTime, decodeTime, diskQueueWait, networkQueueWait, decodeQueueWait}) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Values of the counters at one point in time. Cache and pool gauges are filled in by
+     * {@link FrescoEngine#getMetricsSnapshot()}.
+     */
+    public static class Snapshot {
+
+        public final long requests;
+        public final long memoryHits;
+        public final long memoryMisses;
+        public final long diskHits;
+        public final long diskMisses;
+        public final long fetches;
+        public final long notModified;
+        public final long fetchFailures;
+        public final long fetchesSkipped;
+        public final long fetchedBytes;
+        public final long decodes;
+        public final long decodeFailures;
+        public final long decodedBytes;
+        public final long outOfMemory;
+        public final long cancellations;
+        public final long successes;
+        public final long failures;
+        public final long cancelledRequests;
+        public final String fetchTime;
+        public final String decodeTime;
+        public final String diskQueueWait;
+        public final String networkQueueWait;
+        public final String decodeQueueWait;
+        public long memoryCacheSize;
+        public long memoryCacheLimit;
+        public long bitmapPoolSize;
+        public int bitmapPoolCount;
+        public long diskCacheSize;
+        public int diskCacheEntries;
+        public int inFlight;
+        public int fetchesRunning;
+        public int fetchesParked;
+
+        Snapshot(Metrics metrics) {
+            requests = metrics.requests.get();
+            memoryHits = metrics.memoryHits.get();
+            memoryMisses = metrics.memoryMisses.get();
+            diskHits = metrics.diskHits.get();
+            diskMisses = metrics.diskMisses.get();
+            fetches = metrics.fetches.get();
+            notModified = metrics.notModified.get();
+            fetchFailures = metrics.fetchFailures.get();
+            fetchesSkipped = metrics.fetchesSkipped.get();
+            fetchedBytes = metrics.fetchedBytes.get();
+            decodes = metrics.decodes.get();
+            decodeFailures = metrics.decodeFailures.get();
+            decodedBytes = metrics.decodedBytes.get();
+            outOfMemory = metrics.outOfMemory.get();
+            cancellations = metrics.cancellations.get();
+            successes = metrics.successes.get();
+            failures = metrics.failures.get();
+            cancelledRequests = metrics.cancelledRequests.get();
+            fetchTime = metrics.fetchTime.toString();
+            decodeTime = metrics.decodeTime.toString();
+            diskQueueWait = metrics.diskQueueWait.toString();
+            networkQueueWait = metrics.networkQueueWait.toString();
+            decodeQueueWait = metrics.decodeQueueWait.toString();
+        }
+
+        public double getMemoryHitRate() {
+            long lookups = memoryHits + memoryMisses;
+            return lookups == 0 ? 0 : memoryHits / (double) lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "requests=%d success=%d failed=%d cancelled=%d%n"
+                            + "memory: hits=%d misses=%d (%.1f%%) size=%d/%d bytes%n"
+                            + "pool: %d bitmaps, %d bytes%n"
+                            + "disk: hits=%d misses=%d size=%d bytes in %d entries%n"
+                            + "network: fetches=%d notModified=%d failed=%d skipped=%d bytes=%d time[%s]%n"
+                            + "decode: count=%d failed=%d bytes=%d oom=%d time[%s]%n"
+                            + "queue wait: disk[%s] network[%s] decode[%s]%n"
+                            + "in flight: %d, dropped=%d, fetches running=%d parked=%d",
+                    requests, successes, failures, cancelledRequests,
+                    memoryHits, memoryMisses, getMemoryHitRate() * 100, memoryCacheSize, memoryCacheLimit,
+                    bitmapPoolCount, bitmapPoolSize,
+                    diskHits, diskMisses, diskCacheSize, diskCacheEntries,
+                    fetches, notModified, fetchFailures, fetchesSkipped, fetchedBytes, fetchTime,
+                    decodes, decodeFailures, decodedBytes, outOfMemory, decodeTime,
+                    diskQueueWait, networkQueueWait, decodeQueueWait,
+                    inFlight, cancellations, fetchesRunning, fetchesParked);
+        }
+    }
+}
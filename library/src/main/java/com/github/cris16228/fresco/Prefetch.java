@@ -0,0 +1,44 @@
+package com.github.cris16228.fresco;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of prefetches started by {@link Fresco#prefetchToDisk(String...)} or
+ * {@link Fresco#prefetch(int, int, String...)}. Cancelling it drops every item that has not
+ * started yet; loads that a visible request has since joined keep running for that request.
+ */
+public class Prefetch {
+
+    private final List<Runnable> cancellations = new ArrayList<>();
+    private boolean cancelled;
+
+    synchronized void add(Runnable cancellation) {
+        if (cancelled) {
+            cancellation.run();
+        } else {
+            cancellations.add(cancellation);
+        }
+    }
+
+    public void cancel() {
+        List<Runnable> pending;
+        synchronized (this) {
+            if (cancelled) return;
+            cancelled = true;
+            pending = new ArrayList<>(cancellations);
+            cancellations.clear();
+        }
+        for (Runnable cancellation : pending) {
+            cancellation.run();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized int size() {
+        return cancellations.size();
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.cris16228.fresco;
+
+import android.content.Context;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scroll listener that prefetches the next {@code maxPreload} items in the direction of the
+ * scroll. Items are prefetched into memory at the given size, or only to disk when the size
+ * is not positive. Reversing direction cancels what was queued for the other side. With
+ * {@link #setPauseOnFling(boolean)}, disk reads and decodes are held back while the list
+ * flings.
+ * <pre>
+ * recyclerView.addOnScrollListener(new RecyclerViewPreloader(context, 300, 300, 6,
+ *         position -> items.get(position).getImageUrl()));
+ * </pre>
+ */
+public class RecyclerViewPreloader extends RecyclerView.OnScrollListener {
+
+    public interface UrlProvider {
+        /**
+         * Returns the image URL of the item at {@code position}, or {@code null} if it has none.
+         */
+        String getUrl(int position);
+    }
+
+    private final Context context;
+    private final int width;
+    private final int height;
+    private final int maxPreload;
+    private final UrlProvider urlProvider;
+    private final List<Prefetch> batches = new ArrayList<>();
+    private boolean forward = true;
+    private int preloadedStart = RecyclerView.NO_POSITION;
+    private int preloadedEnd = RecyclerView.NO_POSITION;
+    private boolean pauseOnFling;
+    private boolean paused;
+
+    public RecyclerViewPreloader(Context context, int width, int height, int maxPreload, UrlProvider urlProvider) {
+        if (maxPreload <= 0) {
+            throw new IllegalArgumentException("maxPreload must be positive");
+        }
+        this.context = context;
+        this.width = width;
+        this.height = height;
+        this.maxPreload = maxPreload;
+        this.urlProvider = urlProvider;
+    }
+
+    public RecyclerViewPreloader setPauseOnFling(boolean pauseOnFling) {
+        this.pauseOnFling = pauseOnFling;
+        if (!pauseOnFling) {
+            resume();
+        }
+        return this;
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+        if (!pauseOnFling) return;
+        if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+            if (!paused) {
+                paused = true;
+                Fresco.with(context).pauseRequests();
+            }
+        } else {
+            resume();
+        }
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (dx == 0 && dy == 0) return;
+        RecyclerView.Adapter<?> adapter = recyclerView.getAdapter();
+        int childCount = recyclerView.getChildCount();
+        if (adapter == null || childCount == 0) return;
+        int first = firstPosition(recyclerView, childCount);
+        int last = lastPosition(recyclerView, childCount);
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) return;
+
+        boolean forward = dy > 0 || (dy == 0 && dx > 0);
+        if (forward != this.forward) {
+            cancel();
+            this.forward = forward;
+        }
+        int from;
+        int to;
+        if (forward) {
+            from = Math.max(last + 1, preloadedEnd + 1);
+            to = Math.min(adapter.getItemCount() - 1, last + maxPreload);
+            if (from > to) return;
+            preloadedEnd = to;
+        } else {
+            from = Math.max(0, first - maxPreload);
+            to = preloadedStart == RecyclerView.NO_POSITION ? first - 1 : Math.min(first - 1, preloadedStart - 1);
+            if (from > to) return;
+            preloadedStart = from;
+        }
+        preload(from, to);
+    }
+
+    /**
+     * Cancels every prefetch this listener has queued and not yet started, and resumes requests
+     * if this listener paused them.
+     */
+    public void cancel() {
+        for (Prefetch batch : batches) {
+            batch.cancel();
+        }
+        batches.clear();
+        preloadedStart = RecyclerView.NO_POSITION;
+        preloadedEnd = RecyclerView.NO_POSITION;
+        resume();
+    }
+
+    private void resume() {
+        if (paused) {
+            paused = false;
+            Fresco.with(context).resumeRequests();
+        }
+    }
+
+    private void preload(int from, int to) {
+        List<String> urls = new ArrayList<>();
+        // Nearest items first: the scheduler runs the newest submission of a priority first.
+        for (int i = forward ? to : from; forward ? i >= from : i <= to; i += forward ? -1 : 1) {
+            String url = urlProvider.getUrl(i);
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        if (urls.isEmpty()) return;
+        String[] batch = urls.toArray(new String[0]);
+        Fresco fresco = Fresco.with(context);
+        batches.add(width > 0 && height > 0 ? fresco.prefetch(width, height, batch) : fresco.prefetchToDisk(batch));
+        if (batches.size() > maxPreload) {
+            // Old batches have long started; only the recent ones are worth cancelling.
+            batches.remove(0);
+        }
+    }
+
+    private static int firstPosition(RecyclerView recyclerView, int childCount) {
+        for (int i = 0; i < childCount; i++) {
+            View child = recyclerView.getChildAt(i);
+            int position = recyclerView.getChildAdapterPosition(child);
+            if (position != RecyclerView.NO_POSITION) return position;
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    private static int lastPosition(RecyclerView recyclerView, int childCount) {
+        for (int i = childCount - 1; i >= 0; i--) {
+            View child = recyclerView.getChildAt(i);
+            int position = recyclerView.getChildAdapterPosition(child);
+            if (position != RecyclerView.NO_POSITION) return position;
+        }
+        return RecyclerView.NO_POSITION;
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.cris16228.fresco;
+
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Requests started for one {@link LifecycleOwner}. When the owner stops, their pending work is
+ * cancelled and remembered, and it is started again when the owner starts. When the owner is
+ * destroyed, everything is cancelled for good and later requests are ignored.
+ * <p>
+ * Obtained through {@link FrescoEngine#getRequestManager(LifecycleOwner)}; used on the main
+ * thread only.
+ */
+public class RequestManager implements DefaultLifecycleObserver {
+
+    private final FrescoEngine engine;
+    private final LifecycleOwner owner;
+    private final Map<ImageView, Tracked> tracked = new WeakHashMap<>();
+    private boolean paused;
+    private boolean destroyed;
+
+    RequestManager(FrescoEngine engine, LifecycleOwner owner) {
+        this.engine = engine;
+        this.owner = owner;
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            destroyed = true;
+        } else {
+            owner.getLifecycle().addObserver(this);
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Records the request for {@code imageView}, replacing the previous one. {@code cancel}
+     * stops its work; {@code restart} issues it again after a stop.
+     */
+    void track(ImageView imageView, String key, Runnable cancel, Runnable restart) {
+        tracked.put(imageView, new Tracked(key, cancel, restart));
+    }
+
+    /**
+     * Forgets the request for {@code imageView} once its result was delivered, unless the view
+     * has been bound to another request since.
+     */
+    void complete(ImageView imageView, String key) {
+        Tracked request = tracked.get(imageView);
+        if (request != null && request.key.equals(key)) {
+            tracked.remove(imageView);
+        }
+    }
+
+    @Override
+    public void onStart(@NonNull LifecycleOwner owner) {
+        if (!paused) return;
+        paused = false;
+        List<Tracked> pending = new ArrayList<>(tracked.values());
+        tracked.clear();
+        for (Tracked request : pending) {
+            request.restart.run();
+        }
+    }
+
+    @Override
+    public void onStop(@NonNull LifecycleOwner owner) {
+        paused = true;
+        for (Tracked request : tracked.values()) {
+            request.cancel.run();
+        }
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        destroyed = true;
+        for (Tracked request : tracked.values()) {
+            request.cancel.run();
+        }
+        tracked.clear();
+        owner.getLifecycle().removeObserver(this);
+        engine.removeRequestManager(this.owner);
+    }
+
+    private static class Tracked {
+
+        final String key;
+        final Runnable cancel;
+        final Runnable restart;
+
+        Tracked(String key, Runnable cancel, Runnable restart) {
+            this.key = key;
+            this.cancel = cancel;
+            this.restart = restart;
+        }
+    }
+}
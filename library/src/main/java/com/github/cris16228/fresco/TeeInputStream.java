@@ -0,0 +1,73 @@
+package com.github.cris16228.fresco;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies every byte read from the wrapped stream to {@code out}, so a download can be decoded
+ * and written to the disk cache in the same pass. Skipped bytes are read and copied too.
+ */
+public class TeeInputStream extends FilterInputStream {
+
+    private final OutputStream out;
+    private long count;
+
+    public TeeInputStream(InputStream in, OutputStream out) {
+        super(in);
+        this.out = out;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            out.write(b);
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = in.read(buffer, offset, length);
+        if (read > 0) {
+            out.write(buffer, offset, read);
+            count += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(8192, Math.max(0, n))];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) break;
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Reads whatever the decoder left unread so the copy is complete.
+     */
+    public void drain() throws IOException {
+        byte[] buffer = new byte[8192];
+        while (read(buffer, 0, buffer.length) != -1) {
+            // copied by read()
+        }
+        out.flush();
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
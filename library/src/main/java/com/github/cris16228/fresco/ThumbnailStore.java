@@ -0,0 +1,298 @@
+package com.github.cris16228.fresco;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoded thumbnails kept as raw pixels in a memory-mapped file of fixed-size slots, so a hit
+ * is a copy out of the mapping with no codec involved. A header of {@link #HEADER_SIZE} bytes
+ * per slot records the key hash, last use, dimensions and config; slots are reused least
+ * recently used first.
+ * <p>
+ * The whole file is allocated up front: {@link #sizeOf(int, int, Bitmap.Config)} bytes, 32 MB
+ * for the default 256 slots of 256&times;256 {@code RGB_565}.
+ */
+public class ThumbnailStore {
+
+    public static final int DEFAULT_SLOT_SIZE = 256;
+    public static final int DEFAULT_SLOT_COUNT = 256;
+
+    private static final int MAGIC = 0x46544E31;
+    private static final int HEADER_SIZE = 32;
+    private static final String DATA_FILE = "thumbnails.bin";
+
+    private final File directory;
+    private final int slotSize;
+    private final int slotCount;
+    private final Bitmap.Config config;
+    private final int slotBytes;
+    private final LinkedHashMap<Long, Integer> slots = new LinkedHashMap<>(0, 0.75f, true);
+    private final Map<Integer, Long> owners = new HashMap<>();
+    private MappedByteBuffer headers;
+    private MappedByteBuffer pixels;
+    private BitmapPool bitmapPool;
+    private long sequence;
+    private boolean initialized;
+    private boolean available;
+
+    public ThumbnailStore(File directory) {
+        this(directory, DEFAULT_SLOT_SIZE, DEFAULT_SLOT_COUNT, Bitmap.Config.RGB_565);
+    }
+
+    /**
+     * @param slotSize largest width and height of a stored thumbnail; larger ones are scaled
+     *                 down to fit
+     * @param config   pixel format of the slots, {@code RGB_565} or {@code ARGB_8888}
+     */
+    public ThumbnailStore(File directory, int slotSize, int slotCount, Bitmap.Config config) {
+        checkGeometry(slotSize, slotCount, config);
+        this.directory = directory;
+        this.slotSize = slotSize;
+        this.slotCount = slotCount;
+        this.config = config;
+        this.slotBytes = slotSize * slotSize * BitmapPool.bytesPerPixel(config);
+    }
+
+    /**
+     * Throws if a store of this geometry cannot be built: the headers and the pixels are each
+     * mapped as one buffer, so neither may exceed {@link Integer#MAX_VALUE} bytes.
+     */
+    public static void checkGeometry(int slotSize, int slotCount, Bitmap.Config config) {
+        if (slotSize <= 0 || slotCount <= 0) {
+            throw new IllegalArgumentException("slotSize and slotCount must be positive");
+        }
+        if (config != Bitmap.Config.RGB_565 && config != Bitmap.Config.ARGB_8888) {
+            throw new IllegalArgumentException("Unsupported thumbnail config " + config);
+        }
+        long pixelBytes = (long) slotCount * slotSize * slotSize * BitmapPool.bytesPerPixel(config);
+        if (pixelBytes > Integer.MAX_VALUE || (long) slotCount * HEADER_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(slotCount + " slots of " + slotSize + "x" + slotSize + " " + config + " do not fit in one mapping");
+        }
+    }
+
+    /**
+     * Bytes the store's file takes on disk with this geometry.
+     */
+    public static long sizeOf(int slotSize, int slotCount, Bitmap.Config config) {
+        return (long) slotCount * (HEADER_SIZE + (long) slotSize * slotSize * BitmapPool.bytesPerPixel(config));
+    }
+
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+    }
+
+    public synchronized Bitmap get(String key) {
+        if (key == null || !initialize()) return null;
+        long hash = hash(key);
+        Integer slot = slots.get(hash);
+        if (slot == null) return null;
+        int header = slot * HEADER_SIZE;
+        int width = headers.getInt(header + 20);
+        int height = headers.getInt(header + 24);
+        Bitmap bitmap = null;
+        if (bitmapPool != null) {
+            bitmap = bitmapPool.get(width, height, config);
+        }
+        if (bitmap != null) {
+            bitmap.reconfigure(width, height, config);
+        } else {
+            bitmap = Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.copyPixelsFromBuffer(slice(slot, bitmap.getByteCount()));
+        touch(slot);
+        return bitmap;
+    }
+
+    public synchronized boolean contains(String key) {
+        return key != null && initialize() && slots.containsKey(hash(key));
+    }
+
+    /**
+     * Stores {@code bitmap} under {@code key}, scaling it down to the slot size and converting
+     * it to the store's config when needed. Returns the bitmap as stored.
+     */
+    public synchronized Bitmap put(String key, Bitmap bitmap) {
+        if (key == null || bitmap == null || bitmap.isRecycled() || !initialize()) return bitmap;
+        Bitmap stored = fit(bitmap);
+        if (stored == null) return bitmap;
+        long hash = hash(key);
+        Integer slot = slots.get(hash);
+        if (slot == null) {
+            slot = allocate();
+        }
+        int header = slot * HEADER_SIZE;
+        // Invalidate first so a crash mid-write never leaves a valid header over torn pixels.
+        headers.putInt(header, 0);
+        stored.copyPixelsToBuffer(slice(slot, stored.getByteCount()));
+        headers.putLong(header + 4, hash);
+        headers.putInt(header + 20, stored.getWidth());
+        headers.putInt(header + 24, stored.getHeight());
+        headers.putInt(header + 28, config.ordinal());
+        slots.put(hash, slot);
+        owners.put(slot, hash);
+        touch(slot);
+        headers.putInt(header, MAGIC);
+        return stored;
+    }
+
+    public synchronized void remove(String key) {
+        if (key == null || !initialize()) return;
+        long hash = hash(key);
+        Integer slot = slots.remove(hash);
+        if (slot != null) {
+            owners.remove(slot);
+            headers.putInt(slot * HEADER_SIZE, 0);
+        }
+    }
+
+    public synchronized void clear() {
+        if (!initialize()) return;
+        for (int slot = 0; slot < slotCount; slot++) {
+            headers.putInt(slot * HEADER_SIZE, 0);
+        }
+        slots.clear();
+        owners.clear();
+    }
+
+    /**
+     * Drops the mappings; afterwards the store is empty and ignores puts. The pages are unmapped
+     * once the buffers are collected, as Java cannot unmap them eagerly.
+     */
+    public synchronized void close() {
+        initialized = true;
+        available = false;
+        headers = null;
+        pixels = null;
+        slots.clear();
+        owners.clear();
+    }
+
+    public synchronized int size() {
+        return initialize() ? slots.size() : 0;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    private int allocate() {
+        if (owners.size() < slotCount) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (!owners.containsKey(slot)) return slot;
+            }
+        }
+        Iterator<Map.Entry<Long, Integer>> iterator = slots.entrySet().iterator();
+        Map.Entry<Long, Integer> eldest = iterator.next();
+        iterator.remove();
+        owners.remove(eldest.getValue());
+        return eldest.getValue();
+    }
+
+    private void touch(int slot) {
+        headers.putLong(slot * HEADER_SIZE + 12, ++sequence);
+    }
+
+    private ByteBuffer slice(int slot, int length) {
+        ByteBuffer buffer = pixels.duplicate();
+        // Below Integer.MAX_VALUE, as checkGeometry bounds the whole mapping.
+        int offset = (int) ((long) slot * slotBytes);
+        buffer.position(offset);
+        buffer.limit(offset + length);
+        return buffer.slice();
+    }
+
+    private Bitmap fit(Bitmap bitmap) {
+        if (bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            // Hardware pixels cannot be scaled or read back; take a software copy first.
+            Bitmap software = bitmap.copy(config, false);
+            if (software == null) return null;
+            Bitmap stored = fit(software);
+            if (stored != software) {
+                software.recycle();
+            }
+            return stored;
+        }
+        Bitmap scaled = bitmap;
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (width > slotSize || height > slotSize) {
+            float scale = Math.min(slotSize / (float) width, slotSize / (float) height);
+            scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+        }
+        if (scaled.getConfig() != config) {
+            Bitmap converted = scaled.copy(config, false);
+            if (scaled != bitmap) {
+                scaled.recycle();
+            }
+            scaled = converted;
+        }
+        return scaled;
+    }
+
+    private boolean initialize() {
+        if (initialized) return available;
+        initialized = true;
+        if (!directory.exists())
+            directory.mkdirs();
+        long headerBytes = (long) slotCount * HEADER_SIZE;
+        long length = sizeOf(slotSize, slotCount, config);
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, DATA_FILE), "rw")) {
+            if (file.length() != length) {
+                // Slot geometry changed (or first run): start from an empty, sparse file.
+                file.setLength(0);
+                file.setLength(length);
+            }
+            FileChannel channel = file.getChannel();
+            headers = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerBytes);
+            pixels = channel.map(FileChannel.MapMode.READ_WRITE, headerBytes, (long) slotCount * slotBytes);
+        } catch (IOException | RuntimeException e) {
+            Log.e("ThumbnailStore", "Unable to map thumbnail store", e);
+            return available = false;
+        }
+        List<Integer> used = new ArrayList<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            int header = slot * HEADER_SIZE;
+            if (headers.getInt(header) != MAGIC || headers.getInt(header + 28) != config.ordinal()) continue;
+            used.add(slot);
+            sequence = Math.max(sequence, headers.getLong(header + 12));
+        }
+        // Rebuild the LRU order from the last-use counters, oldest first.
+        Collections.sort(used, (a, b) -> Long.compare(headers.getLong(a * HEADER_SIZE + 12), headers.getLong(b * HEADER_SIZE + 12)));
+        for (int slot : used) {
+            long hash = headers.getLong(slot * HEADER_SIZE + 4);
+            Integer previous = slots.put(hash, slot);
+            if (previous != null) {
+                owners.remove(previous);
+                headers.putInt(previous * HEADER_SIZE, 0);
+            }
+            owners.put(slot, hash);
+        }
+        return available = true;
+    }
+
+    /**
+     * 64-bit FNV-1a over the key's characters.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
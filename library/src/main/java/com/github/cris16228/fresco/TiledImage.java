@@ -0,0 +1,274 @@
+package com.github.cris16228.fresco;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * A large image shown in tiles, for zoomable viewers. Only the tiles covering the visible part
+ * are decoded, with {@link BitmapRegionDecoder} at the sample size of the current zoom, so
+ * memory follows the screen and not the image. Tiles are kept in the memory cache under the
+ * source, sample size and tile position.
+ * <p>
+ * Obtained from {@link Fresco#loadTiled(String, Callback)}. Call {@link #setViewport(Rect, float)}
+ * whenever the viewer pans or zooms, and {@link #close()} when it goes away. Both, and every
+ * callback, run on the main thread.
+ */
+public class TiledImage {
+
+    public static final int DEFAULT_TILE_SIZE = 512;
+    public static final int DEFAULT_PREVIEW_SIZE = 1024;
+    public static final int MAX_SAMPLE_SIZE = 1 << 30;
+
+    public interface Callback {
+        /**
+         * The image is open: its size and preview are available.
+         */
+        void onReady(TiledImage image);
+
+        /**
+         * A tile requested by {@link #setViewport(Rect, float)} has been decoded. It may no
+         * longer be visible if the viewport moved meanwhile.
+         */
+        void onTileLoaded(TiledImage image, Tile tile);
+
+        void onFail();
+    }
+
+    public static class Tile {
+
+        public final int sampleSize;
+        public final int column;
+        public final int row;
+        /**
+         * Part of the image the tile covers, in full-resolution pixels.
+         */
+        public final Rect region;
+        public final Bitmap bitmap;
+
+        Tile(int sampleSize, int column, int row, Rect region, Bitmap bitmap) {
+            this.sampleSize = sampleSize;
+            this.column = column;
+            this.row = row;
+            this.region = region;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final FrescoEngine engine;
+    private final String source;
+    private final String sourceKey;
+    private final int tileSize;
+    private final Bitmap.Config config;
+    private final Callback callback;
+    private final Map<String, Future<?>> pending = new HashMap<>();
+    private volatile BitmapRegionDecoder decoder;
+    private volatile boolean closed;
+    private String mimeType;
+    private int width;
+    private int height;
+    private Bitmap preview;
+
+    TiledImage(FrescoEngine engine, String source, int tileSize, Bitmap.Config config, Callback callback) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("tileSize must be positive");
+        }
+        this.engine = engine;
+        this.source = source;
+        this.sourceKey = CacheKey.of(source);
+        this.tileSize = tileSize;
+        // Tiles are drawn over each other and the preview, so they stay software bitmaps.
+        this.config = DecodeConfigs.software(config);
+        this.callback = callback;
+    }
+
+    /**
+     * Opens the decoder and the preview. {@code header} is the one stored with a disk-cache
+     * entry, or {@code null} to read it from the file. Runs on the decode pool.
+     */
+    void open(File file, ImageHeader header, int previewSize) {
+        if (closed) return;
+        if (file == null) {
+            engine.getHandler().post(callback::onFail);
+            return;
+        }
+        BitmapRegionDecoder opened;
+        try {
+            opened = BitmapRegionDecoder.newInstance(file.getAbsolutePath(), false);
+        } catch (IOException e) {
+            e.printStackTrace();
+            engine.getHandler().post(callback::onFail);
+            return;
+        }
+        ImageHeader bounds = header != null ? header : ImageHeader.bounds(file);
+        Bitmap sampled;
+        try {
+            sampled = FileUtils.decodeSampledFile(file.getAbsolutePath(), previewSize, previewSize, config, null, bounds);
+        } catch (OutOfMemoryError e) {
+            e.printStackTrace();
+            sampled = null;
+        }
+        Bitmap previewBitmap = sampled;
+        engine.getHandler().post(() -> {
+            if (closed) {
+                opened.recycle();
+                return;
+            }
+            mimeType = bounds != null ? bounds.mimeType : null;
+            width = opened.getWidth();
+            height = opened.getHeight();
+            preview = previewBitmap;
+            decoder = opened;
+            callback.onReady(this);
+        });
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * The whole image subsampled to about the preview size, to draw under tiles that are not
+     * loaded yet. May be {@code null} if it did not fit in memory.
+     */
+    public Bitmap getPreview() {
+        return preview;
+    }
+
+    /**
+     * Largest power-of-two subsampling that still shows at least one decoded pixel per screen
+     * pixel when the image is drawn at {@code scale} screen pixels per image pixel, up to
+     * {@link #MAX_SAMPLE_SIZE}.
+     *
+     * @throws IllegalArgumentException if {@code scale} is not positive
+     */
+    public static int sampleSizeFor(float scale) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("scale must be positive: " + scale);
+        }
+        int sampleSize = 1;
+        while (sampleSize < MAX_SAMPLE_SIZE && sampleSize * 2 * scale <= 1) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Moves the viewport to {@code visible}, in full-resolution image pixels, shown at
+     * {@code scale}. Returns the tiles of the viewport already in memory; the rest are decoded
+     * in the background and reported to {@link Callback#onTileLoaded(TiledImage, Tile)}. Tiles
+     * still queued for an earlier viewport and no longer visible are dropped.
+     *
+     * @throws IllegalArgumentException if {@code scale} is not positive
+     */
+    public List<Tile> setViewport(Rect visible, float scale) {
+        int wantedSampleSize = sampleSizeFor(scale);
+        List<Tile> ready = new ArrayList<>();
+        if (decoder == null || closed || visible.width() <= 0 || visible.height() <= 0) {
+            return ready;
+        }
+        // Past the image's size a larger sample size only shrinks it to a single pixel.
+        int sampleSize = Math.min(wantedSampleSize, Integer.highestOneBit(Math.max(width, height)));
+        int span = tileSize * sampleSize;
+        int firstColumn = Math.max(0, visible.left / span);
+        int lastColumn = Math.min((width - 1) / span, (visible.right - 1) / span);
+        int firstRow = Math.max(0, visible.top / span);
+        int lastRow = Math.min((height - 1) / span, (visible.bottom - 1) / span);
+        MemoryCache memoryCache = engine.getMemoryCache();
+        Set<String> wanted = new HashSet<>();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Rect region = new Rect(column * span, row * span, Math.min(width, (column + 1) * span), Math.min(height, (row + 1) * span));
+                Bitmap cached = memoryCache.getTile(source, tileSize, sampleSize, column, row);
+                if (cached != null) {
+                    ready.add(new Tile(sampleSize, column, row, region, cached));
+                    continue;
+                }
+                String key = CacheKey.tile(sourceKey, tileSize, sampleSize, column, row);
+                wanted.add(key);
+                if (!pending.containsKey(key)) {
+                    Tile tile = new Tile(sampleSize, column, row, region, null);
+                    pending.put(key, engine.getDecodeExecutor().submit(() -> decodeTile(key, tile), Priority.VISIBLE));
+                }
+            }
+        }
+        Iterator<Map.Entry<String, Future<?>>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Future<?>> entry = iterator.next();
+            if (!wanted.contains(entry.getKey()) && engine.getDecodeExecutor().dequeue(entry.getValue())) {
+                iterator.remove();
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Cancels queued tiles and releases the decoder. Tiles already in the memory cache stay
+     * there for the next time the image is opened.
+     */
+    public void close() {
+        closed = true;
+        for (Future<?> future : pending.values()) {
+            engine.getDecodeExecutor().dequeue(future);
+        }
+        pending.clear();
+        BitmapRegionDecoder opened = decoder;
+        decoder = null;
+        if (opened != null) {
+            opened.recycle();
+        }
+    }
+
+    private void decodeTile(String key, Tile request) {
+        BitmapRegionDecoder opened = decoder;
+        Bitmap bitmap = null;
+        if (opened != null && !closed) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = request.sampleSize;
+            options.inPreferredConfig = DecodeConfigs.resolve(config, mimeType);
+            try {
+                bitmap = opened.decodeRegion(request.region, options);
+            } catch (IllegalStateException e) {
+                // Closed while decoding.
+            } catch (OutOfMemoryError e) {
+                e.printStackTrace();
+            }
+        }
+        if (bitmap != null) {
+            // Viewers keep tiles while drawing them, so evicted tiles must not be reused.
+            engine.markExposed(bitmap);
+            engine.getMemoryCache().putTile(source, tileSize, request.sampleSize, request.column, request.row, bitmap);
+        }
+        Bitmap decoded = bitmap;
+        engine.getHandler().post(() -> {
+            pending.remove(key);
+            if (decoded != null && !closed) {
+                callback.onTileLoaded(this, new Tile(request.sampleSize, request.column, request.row, request.region, decoded));
+            }
+        });
+    }
+}
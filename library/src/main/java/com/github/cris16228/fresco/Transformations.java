@@ -0,0 +1,182 @@
+package com.github.cris16228.fresco;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+
+import com.github.cris16228.fresco.interfaces.Transformation;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Built-in {@link Transformation}s. Each returns its source untouched when it would be a
+ * no-op, so an identity step costs no allocation.
+ */
+public final class Transformations {
+
+    /**
+     * Disk-cache metadata key holding the EXIF orientation of the cached image.
+     */
+    public static final String ORIENTATION = "orientation";
+
+    private Transformations() {
+    }
+
+    public static Transformation rotate(int degrees) {
+        int normalized = ((degrees % 360) + 360) % 360;
+        return new MatrixTransformation("rotate(" + normalized + ")") {
+            @Override
+            boolean apply(Matrix matrix, Bitmap source, int exifOrientation) {
+                if (normalized == 0) return false;
+                matrix.postRotate(normalized);
+                return true;
+            }
+        };
+    }
+
+    public static Transformation flipHorizontal() {
+        return new MatrixTransformation("flipHorizontal") {
+            @Override
+            boolean apply(Matrix matrix, Bitmap source, int exifOrientation) {
+                matrix.postScale(-1, 1);
+                return true;
+            }
+        };
+    }
+
+    public static Transformation flipVertical() {
+        return new MatrixTransformation("flipVertical") {
+            @Override
+            boolean apply(Matrix matrix, Bitmap source, int exifOrientation) {
+                matrix.postScale(1, -1);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Rotates and mirrors the image upright according to its EXIF orientation.
+     */
+    public static Transformation autoOrient() {
+        return new MatrixTransformation("autoOrient") {
+            @Override
+            boolean apply(Matrix matrix, Bitmap source, int exifOrientation) {
+                switch (exifOrientation) {
+                    case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                        matrix.postScale(-1, 1);
+                        return true;
+                    case ExifInterface.ORIENTATION_ROTATE_180:
+                        matrix.postRotate(180);
+                        return true;
+                    case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                        matrix.postScale(1, -1);
+                        return true;
+                    case ExifInterface.ORIENTATION_TRANSPOSE:
+                        matrix.postScale(-1, 1);
+                        matrix.postRotate(270);
+                        return true;
+                    case ExifInterface.ORIENTATION_ROTATE_90:
+                        matrix.postRotate(90);
+                        return true;
+                    case ExifInterface.ORIENTATION_TRANSVERSE:
+                        matrix.postScale(-1, 1);
+                        matrix.postRotate(90);
+                        return true;
+                    case ExifInterface.ORIENTATION_ROTATE_270:
+                        matrix.postRotate(270);
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+        };
+    }
+
+    /**
+     * Scales the image down, keeping its aspect ratio, so it fits inside {@code width} x
+     * {@code height}. Smaller images are left as they are.
+     */
+    public static Transformation fitInside(int width, int height) {
+        return new MatrixTransformation("fitInside(" + width + "x" + height + ")") {
+            @Override
+            boolean apply(Matrix matrix, Bitmap source, int exifOrientation) {
+                float scale = Math.min(width / (float) source.getWidth(), height / (float) source.getHeight());
+                if (scale >= 1) return false;
+                matrix.postScale(scale, scale);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Scales the image to cover {@code width} x {@code height} and crops the overflow evenly
+     * from both sides.
+     */
+    public static Transformation centerCrop(int width, int height) {
+        return new Transformation() {
+            @Override
+            public String getKey() {
+                return "centerCrop(" + width + "x" + height + ")";
+            }
+
+            @Override
+            public Bitmap transform(Bitmap source, int exifOrientation) {
+                if (source.getWidth() == width && source.getHeight() == height) return source;
+                float scale = Math.max(width / (float) source.getWidth(), height / (float) source.getHeight());
+                int cropWidth = Math.min(source.getWidth(), Math.round(width / scale));
+                int cropHeight = Math.min(source.getHeight(), Math.round(height / scale));
+                Matrix matrix = new Matrix();
+                matrix.postScale(width / (float) cropWidth, height / (float) cropHeight);
+                return Bitmap.createBitmap(source, (source.getWidth() - cropWidth) / 2, (source.getHeight() - cropHeight) / 2,
+                        cropWidth, cropHeight, matrix, true);
+            }
+        };
+    }
+
+    /**
+     * Joins the keys of {@code chain}; {@code null} for an empty chain.
+     */
+    static String key(List<Transformation> chain) {
+        if (chain == null || chain.isEmpty()) return null;
+        StringBuilder builder = new StringBuilder();
+        for (Transformation transformation : chain) {
+            if (builder.length() > 0) {
+                builder.append('|');
+            }
+            builder.append(transformation.getKey());
+        }
+        return builder.toString();
+    }
+
+    static int readOrientation(File file) {
+        try {
+            return new ExifInterface(file.getAbsolutePath()).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (Exception e) {
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private abstract static class MatrixTransformation implements Transformation {
+
+        private final String key;
+
+        MatrixTransformation(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Bitmap transform(Bitmap source, int exifOrientation) {
+            Matrix matrix = new Matrix();
+            if (!apply(matrix, source, exifOrientation)) return source;
+            return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+        }
+
+        abstract boolean apply(Matrix matrix, Bitmap source, int exifOrientation);
+    }
+}
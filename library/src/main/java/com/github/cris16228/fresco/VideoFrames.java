@@ -0,0 +1,275 @@
+package com.github.cris16228.fresco;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frame extraction for video thumbnails. Frames are decoded at the requested size where the
+ * platform allows it, and {@link MediaMetadataRetriever}s are kept open for the most recently
+ * used videos so scrubbing one video does not reopen it for every frame.
+ * <p>
+ * A scrubbing strip is extracted in one pass over one retriever and cached in the
+ * {@link FileCache} as a single entry of raw pixels, so loading it again needs no codec.
+ */
+public class VideoFrames {
+
+    public static final int DEFAULT_MAX_RETRIEVERS = 2;
+
+    private static final String WIDTH = "width";
+    private static final String HEIGHT = "height";
+    private static final String CONFIG = "config";
+
+    private final Context context;
+    private final FileCache fileCache;
+    private final BitmapPool bitmapPool;
+    private final int maxRetrievers;
+    private final LinkedHashMap<Uri, MediaMetadataRetriever> idle = new LinkedHashMap<>(0, 0.75f, true);
+
+    public VideoFrames(Context context, FileCache fileCache, BitmapPool bitmapPool) {
+        this(context, fileCache, bitmapPool, DEFAULT_MAX_RETRIEVERS);
+    }
+
+    /**
+     * @param maxRetrievers how many videos may stay open between calls; each open retriever
+     *                      holds a file descriptor and decoder resources
+     */
+    public VideoFrames(Context context, FileCache fileCache, BitmapPool bitmapPool, int maxRetrievers) {
+        this.context = context;
+        this.fileCache = fileCache;
+        this.bitmapPool = bitmapPool;
+        this.maxRetrievers = maxRetrievers;
+    }
+
+    /**
+     * Returns the frame nearest to {@code timeUs}, scaled down to fit {@code width} x
+     * {@code height} when both are positive, or {@code null} if it cannot be read.
+     */
+    public Bitmap getFrame(Uri uri, long timeUs, int width, int height) {
+        MediaMetadataRetriever retriever = acquire(uri);
+        if (retriever == null) return null;
+        try {
+            Bitmap frame = extract(retriever, timeUs, width, height);
+            recycle(uri, retriever);
+            return frame;
+        } catch (RuntimeException e) {
+            Log.e("VideoFrames", "Unable to read frame of " + uri, e);
+            close(retriever);
+            return null;
+        }
+    }
+
+    /**
+     * Duration of the video in microseconds, or -1 if unknown.
+     */
+    public long getDurationUs(Uri uri) {
+        MediaMetadataRetriever retriever = acquire(uri);
+        if (retriever == null) return -1;
+        long duration = durationUs(retriever);
+        recycle(uri, retriever);
+        return duration;
+    }
+
+    /**
+     * Returns {@code frameCount} frames spread evenly over the video, laid out left to right in
+     * one bitmap of {@code frameCount * frameWidth} x {@code frameHeight}. Each frame is fitted
+     * and centred in its cell. The strip is cached under {@code key}. Blocks while the frames
+     * are extracted.
+     */
+    public Bitmap getStrip(String key, Uri uri, int frameCount, int frameWidth, int frameHeight) {
+        if (frameCount <= 0 || frameWidth <= 0 || frameHeight <= 0) {
+            throw new IllegalArgumentException("frameCount, frameWidth and frameHeight must be positive");
+        }
+        Bitmap cached = readStrip(key);
+        if (cached != null) return cached;
+
+        MediaMetadataRetriever retriever = acquire(uri);
+        if (retriever == null) return null;
+        Bitmap strip;
+        try {
+            long duration = Math.max(0, durationUs(retriever));
+            strip = Bitmap.createBitmap(frameCount * frameWidth, frameHeight, Bitmap.Config.RGB_565);
+            Canvas canvas = new Canvas(strip);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            for (int i = 0; i < frameCount; i++) {
+                // Sample the middle of each segment so the first frame is not a black lead-in.
+                long timeUs = duration * (2L * i + 1) / (2L * frameCount);
+                Bitmap frame = extract(retriever, timeUs, frameWidth, frameHeight);
+                if (frame == null) continue;
+                float left = i * frameWidth + (frameWidth - frame.getWidth()) / 2f;
+                float top = (frameHeight - frame.getHeight()) / 2f;
+                canvas.drawBitmap(frame, left, top, paint);
+                frame.recycle();
+            }
+            recycle(uri, retriever);
+        } catch (RuntimeException e) {
+            Log.e("VideoFrames", "Unable to read frames of " + uri, e);
+            close(retriever);
+            return null;
+        }
+        writeStrip(key, strip);
+        return strip;
+    }
+
+    /**
+     * Releases every retriever kept open for reuse.
+     */
+    public void clear() {
+        List<MediaMetadataRetriever> released;
+        synchronized (idle) {
+            released = new ArrayList<>(idle.values());
+            idle.clear();
+        }
+        for (MediaMetadataRetriever retriever : released) {
+            close(retriever);
+        }
+    }
+
+    private Bitmap extract(MediaMetadataRetriever retriever, long timeUs, int width, int height) {
+        boolean scaled = width > 0 && height > 0;
+        if (scaled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            return retriever.getScaledFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, width, height);
+        }
+        Bitmap frame = retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+        if (frame == null || !scaled) return frame;
+        float scale = Math.min(width / (float) frame.getWidth(), height / (float) frame.getHeight());
+        if (scale >= 1) return frame;
+        Bitmap result = Bitmap.createScaledBitmap(frame, Math.max(1, Math.round(frame.getWidth() * scale)),
+                Math.max(1, Math.round(frame.getHeight() * scale)), true);
+        if (result != frame) {
+            frame.recycle();
+        }
+        return result;
+    }
+
+    private static long durationUs(MediaMetadataRetriever retriever) {
+        String ms = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+        if (StringUtils.isEmpty(ms)) return -1;
+        try {
+            return Long.parseLong(ms) * 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Takes the idle retriever for {@code uri} if there is one, so no other thread uses it
+     * meanwhile, or opens a new one.
+     */
+    private MediaMetadataRetriever acquire(Uri uri) {
+        synchronized (idle) {
+            MediaMetadataRetriever retriever = idle.remove(uri);
+            if (retriever != null) return retriever;
+        }
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            return retriever;
+        } catch (RuntimeException e) {
+            Log.e("VideoFrames", "Unable to open " + uri, e);
+            close(retriever);
+            return null;
+        }
+    }
+
+    private void recycle(Uri uri, MediaMetadataRetriever retriever) {
+        List<MediaMetadataRetriever> released = new ArrayList<>();
+        synchronized (idle) {
+            MediaMetadataRetriever previous = idle.put(uri, retriever);
+            if (previous != null) {
+                released.add(previous);
+            }
+            Iterator<MediaMetadataRetriever> iterator = idle.values().iterator();
+            while (idle.size() > maxRetrievers && iterator.hasNext()) {
+                released.add(iterator.next());
+                iterator.remove();
+            }
+        }
+        for (MediaMetadataRetriever eldest : released) {
+            close(eldest);
+        }
+    }
+
+    private static void close(MediaMetadataRetriever retriever) {
+        try {
+            retriever.release();
+        } catch (RuntimeException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Bitmap readStrip(String key) {
+        File file = fileCache.get(key);
+        if (file == null) return null;
+        Map<String, String> metadata = fileCache.getMetadata(key);
+        try {
+            int width = Integer.parseInt(metadata.get(WIDTH));
+            int height = Integer.parseInt(metadata.get(HEIGHT));
+            Bitmap.Config config = Bitmap.Config.valueOf(metadata.get(CONFIG));
+            Bitmap bitmap = bitmapPool != null ? bitmapPool.get(width, height, config) : null;
+            if (bitmap != null) {
+                bitmap.reconfigure(width, height, config);
+            } else {
+                bitmap = Bitmap.createBitmap(width, height, config);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(bitmap.getByteCount());
+            try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                int read;
+                do {
+                    read = channel.read(buffer);
+                } while (read > 0 && buffer.hasRemaining());
+            }
+            if (buffer.hasRemaining()) {
+                fileCache.clear(key);
+                return null;
+            }
+            buffer.flip();
+            bitmap.copyPixelsFromBuffer(buffer);
+            return bitmap;
+        } catch (IOException | RuntimeException e) {
+            Log.e("VideoFrames", "Unreadable strip, dropping it", e);
+            fileCache.clear(key);
+            return null;
+        }
+    }
+
+    private void writeStrip(String key, Bitmap strip) {
+        File tempFile = fileCache.newTempFile(key);
+        if (tempFile == null) return;
+        ByteBuffer buffer = ByteBuffer.allocate(strip.getByteCount());
+        strip.copyPixelsToBuffer(buffer);
+        buffer.flip();
+        try (FileChannel channel = new FileOutputStream(tempFile).getChannel()) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fileCache.abort(tempFile);
+            return;
+        }
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(WIDTH, String.valueOf(strip.getWidth()));
+        metadata.put(HEIGHT, String.valueOf(strip.getHeight()));
+        metadata.put(CONFIG, strip.getConfig().name());
+        fileCache.commit(key, tempFile, metadata);
+    }
+}
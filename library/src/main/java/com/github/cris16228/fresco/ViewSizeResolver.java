@@ -0,0 +1,61 @@
+package com.github.cris16228.fresco;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+/**
+ * Works out how large a view will draw its content, waiting for the next layout pass when the
+ * view has not been measured yet. A dimension of 0 means the view does not constrain that axis.
+ */
+public class ViewSizeResolver {
+
+    public interface Callback {
+        void onSizeReady(int width, int height);
+    }
+
+    public static void resolve(View view, Callback callback) {
+        int width = getWidth(view);
+        int height = getHeight(view);
+        if (width > 0 && height > 0) {
+            callback.onSizeReady(width, height);
+            return;
+        }
+        ViewTreeObserver observer = view.getViewTreeObserver();
+        if (observer == null || !observer.isAlive()) {
+            callback.onSizeReady(width, height);
+            return;
+        }
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                ViewTreeObserver current = view.getViewTreeObserver();
+                if (current != null && current.isAlive()) {
+                    current.removeOnPreDrawListener(this);
+                }
+                callback.onSizeReady(getWidth(view), getHeight(view));
+                return true;
+            }
+        });
+    }
+
+    private static int getWidth(View view) {
+        int padding = view.getPaddingLeft() + view.getPaddingRight();
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        int size = view.getWidth();
+        if (size <= 0 && params != null && params.width > 0) {
+            size = params.width;
+        }
+        return Math.max(0, size - padding);
+    }
+
+    private static int getHeight(View view) {
+        int padding = view.getPaddingTop() + view.getPaddingBottom();
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        int size = view.getHeight();
+        if (size <= 0 && params != null && params.height > 0) {
+            size = params.height;
+        }
+        return Math.max(0, size - padding);
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.cris16228.fresco.interfaces;
+
+import android.graphics.Bitmap;
+
+/**
+ * Progress of image loads, for logging and metrics. Every method has an empty default, so an
+ * implementation only overrides what it needs. Callbacks must be thread-safe and return
+ * quickly: the request start, the memory cache lookup and cancellations are reported on the
+ * main thread, the other stages on the engine's worker threads, and the end of a request on
+ * either.
+ * <p>
+ * Every {@link #onRequestStart(String)} is followed by exactly one
+ * {@link #onRequestEnd(String, boolean)} or {@link #onRequestCancelled(String)}.
+ * <p>
+ * Loads of the same image are shared, so the stage callbacks of a shared load go to the
+ * listener of the request that started it.
+ */
+public interface EventListener {
+
+    default void onRequestStart(String url) {
+    }
+
+    default void onMemoryCacheHit(String url) {
+    }
+
+    default void onMemoryCacheMiss(String url) {
+    }
+
+    default void onDiskCacheHit(String url) {
+    }
+
+    default void onDiskCacheMiss(String url) {
+    }
+
+    /**
+     * A response was received and, unless {@code code} is 304, written to the disk cache.
+     */
+    default void onFetchEnd(String url, int code, long bytes, long durationNanos) {
+    }
+
+    default void onFetchFailed(String url, Exception error) {
+    }
+
+    /**
+     * No fetch was made because {@code url} failed recently or its host is backing off.
+     */
+    default void onFetchSkipped(String url) {
+    }
+
+    /**
+     * A cached file was decoded; {@code bitmap} is {@code null} if decoding failed.
+     */
+    default void onDecodeEnd(String url, Bitmap bitmap, long durationNanos) {
+    }
+
+    default void onOutOfMemory(String url) {
+    }
+
+    /**
+     * The load for {@code key} was dropped because every request waiting on it was cancelled.
+     */
+    default void onCancelled(String key) {
+    }
+
+    default void onRequestEnd(String url, boolean success) {
+    }
+
+    /**
+     * The request for {@code url} ended without a result: its view was rebound, or the request
+     * was cancelled or paused.
+     */
+    default void onRequestCancelled(String url) {
+    }
+}
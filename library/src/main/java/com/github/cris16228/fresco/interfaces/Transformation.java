@@ -0,0 +1,19 @@
+package com.github.cris16228.fresco.interfaces;
+
+import android.graphics.Bitmap;
+
+public interface Transformation {
+
+    /**
+     * Identifies this transformation and its parameters. Results are cached under the keys of
+     * the whole chain, so two transformations that produce different output must never share
+     * a key.
+     */
+    String getKey();
+
+    /**
+     * Returns the transformed bitmap, or {@code source} itself when there is nothing to do.
+     * {@code exifOrientation} is the source's EXIF orientation, read once when it was cached.
+     */
+    Bitmap transform(Bitmap source, int exifOrientation);
+}
@@ -0,0 +1,38 @@
+package com.github.cris16228.fresco;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TiledImageTest {
+
+    @Test
+    public void sampleSizeFollowsTheZoom() {
+        assertEquals(1, TiledImage.sampleSizeFor(4f));
+        assertEquals(1, TiledImage.sampleSizeFor(1f));
+        assertEquals(1, TiledImage.sampleSizeFor(0.6f));
+        assertEquals(2, TiledImage.sampleSizeFor(0.5f));
+        assertEquals(2, TiledImage.sampleSizeFor(0.3f));
+        assertEquals(4, TiledImage.sampleSizeFor(0.25f));
+        assertEquals(1, TiledImage.sampleSizeFor(Float.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void tinyScalesAreCapped() {
+        assertEquals(TiledImage.MAX_SAMPLE_SIZE, TiledImage.sampleSizeFor(Float.MIN_VALUE));
+        assertEquals(TiledImage.MAX_SAMPLE_SIZE, TiledImage.sampleSizeFor(1e-20f));
+    }
+
+    @Test
+    public void invalidScalesAreRejected() {
+        for (float scale : new float[]{0f, -0f, -1f, Float.NaN, Float.NEGATIVE_INFINITY}) {
+            try {
+                TiledImage.sampleSizeFor(scale);
+                fail("accepted " + scale);
+            } catch (IllegalArgumentException expected) {
+
+            }
+        }
+    }
+}